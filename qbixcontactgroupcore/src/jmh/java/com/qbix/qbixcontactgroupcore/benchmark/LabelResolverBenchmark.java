@@ -0,0 +1,184 @@
+package com.qbix.qbixcontactgroupcore.benchmark;
+
+import com.qbix.qbixcontactgroupcore.LabelOperation;
+import com.qbix.qbixcontactgroupcore.LabelQuery;
+import com.qbix.qbixcontactgroupcore.LabelResolution;
+import com.qbix.qbixcontactgroupcore.LabelResolver;
+import com.qbix.qbixcontactgroupcore.LabelRow;
+import com.qbix.qbixcontactgroupcore.MembershipChanges;
+import com.qbix.qbixcontactgroupcore.collections.IntBitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of every label resolution path over synthetic address books.
+ * Run with {@code ./gradlew :qbixcontactgroupcore:jmh}; "gc" profiler adds allocation rate
+ * (gc.alloc.rate.norm - bytes per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LabelResolverBenchmark {
+
+    private static final long SEED = 42;
+    private static final int LABELS_PER_CONTACT = 3;
+    private static final int REQUESTED_LABELS = 20;
+    private static final int UPDATED_CONTACTS = 500;
+    private static final int BATCH_OPERATIONS = 10;
+
+    @Param({"1000", "10000", "100000"})
+    public int contacts;
+
+    @Param({"100", "1000", "5000"})
+    public int labels;
+
+    @Param({"3"})
+    public int accounts;
+
+    private SyntheticAddressBook addressBook;
+    private Set<String> accountNames;
+    private LabelResolution resolution;
+    private String[] requestedSourceIds;
+    private List<LabelOperation> addOperations;
+    private List<LabelOperation> batchOperations;
+    //(first or second requested label) and third one, but not fourth one
+    private LabelQuery query;
+    private HashMap<String, IntBitmap> snapshotMembers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        addressBook = new SyntheticAddressBook(contacts, labels, accounts, LABELS_PER_CONTACT, SEED);
+        accountNames = addressBook.getAccountNames();
+        resolution = LabelResolver.resolveAll(addressBook);
+        Random random = new Random(SEED);
+        requestedSourceIds = new String[REQUESTED_LABELS];
+        for (int i = 0; i < requestedSourceIds.length; i++) {
+            requestedSourceIds[i] = randomSourceId(random);
+        }
+        addOperations = new ArrayList<>();
+        addOperations.add(new LabelOperation(true, randomSourceId(random), randomContactIds(random, UPDATED_CONTACTS)));
+        batchOperations = new ArrayList<>();
+        for (int i = 0; i < BATCH_OPERATIONS; i++) {
+            batchOperations.add(new LabelOperation(i % 2 == 0, randomSourceId(random),
+                    randomContactIds(random, UPDATED_CONTACTS / BATCH_OPERATIONS)));
+        }
+        List<LabelQuery> union = new ArrayList<>();
+        union.add(LabelQuery.label(requestedSourceIds[0]));
+        union.add(LabelQuery.label(requestedSourceIds[1]));
+        List<LabelQuery> intersection = new ArrayList<>();
+        intersection.add(LabelQuery.of(LabelQuery.Operator.UNION, union));
+        intersection.add(LabelQuery.label(requestedSourceIds[2]));
+        List<LabelQuery> difference = new ArrayList<>();
+        difference.add(LabelQuery.of(LabelQuery.Operator.INTERSECTION, intersection));
+        difference.add(LabelQuery.label(requestedSourceIds[3]));
+        query = LabelQuery.of(LabelQuery.Operator.DIFFERENCE, difference);
+        snapshotMembers = toBitmaps(resolution.getLabelsBySourceId(requestedSourceIds, accountNames));
+    }
+
+    /**
+     * Full scan behind "getAll" and labels snapshot.
+     */
+    @Benchmark
+    public LabelResolution resolveAll() {
+        return LabelResolver.resolveAll(addressBook);
+    }
+
+    /**
+     * "get" of a few labels without snapshot.
+     */
+    @Benchmark
+    public List<LabelRow> resolveBySourceId() {
+        return LabelResolver.resolveBySourceId(addressBook, requestedSourceIds, accountNames);
+    }
+
+    /**
+     * "get" of a few labels from resolved snapshot.
+     */
+    @Benchmark
+    public List<LabelRow> snapshotBySourceId() {
+        return resolution.getLabelsBySourceId(requestedSourceIds, accountNames);
+    }
+
+    /**
+     * "addContact" with many contacts.
+     */
+    @Benchmark
+    public MembershipChanges planAddToLabel() {
+        return LabelResolver.planUpdates(addressBook, addOperations);
+    }
+
+    /**
+     * "batchUpdate" with mixed add/remove operations.
+     */
+    @Benchmark
+    public MembershipChanges planBatchUpdate() {
+        return LabelResolver.planUpdates(addressBook, batchOperations);
+    }
+
+    /**
+     * "query" served from snapshot, which keeps member bitmaps of queried labels.
+     */
+    @Benchmark
+    public IntBitmap snapshotQuery() {
+        return query.evaluate(new MapMembers(snapshotMembers));
+    }
+
+    /**
+     * "query" without snapshot: labels of the expression are resolved and turned into bitmaps.
+     */
+    @Benchmark
+    public IntBitmap queryBySourceId() {
+        String[] sourceIds = query.getSourceIds().toArray(new String[0]);
+        return query.evaluate(new MapMembers(toBitmaps(
+                LabelResolver.resolveBySourceId(addressBook, sourceIds, accountNames))));
+    }
+
+    private static HashMap<String, IntBitmap> toBitmaps(List<LabelRow> labels) {
+        HashMap<String, IntBitmap> bitmaps = new HashMap<>();
+        for (LabelRow label : labels) {
+            bitmaps.put(label.sourceId, IntBitmap.of(label.contactIds.toArray()));
+        }
+        return bitmaps;
+    }
+
+    private static class MapMembers implements LabelQuery.Members {
+        private final HashMap<String, IntBitmap> bitmaps;
+
+        MapMembers(HashMap<String, IntBitmap> bitmaps) {
+            this.bitmaps = bitmaps;
+        }
+
+        @Override
+        public IntBitmap get(String sourceId) {
+            IntBitmap bitmap = bitmaps.get(sourceId);
+            return bitmap == null ? IntBitmap.EMPTY : bitmap;
+        }
+    }
+
+    private String randomSourceId(Random random) {
+        return SyntheticAddressBook.SOURCE_ID_PREFIX + random.nextInt(addressBook.getLabelCount());
+    }
+
+    private String[] randomContactIds(Random random, int count) {
+        String[] contactIds = new String[Math.min(count, addressBook.getContactCount())];
+        for (int i = 0; i < contactIds.length; i++) {
+            contactIds[i] = String.valueOf(1 + random.nextInt(addressBook.getContactCount()));
+        }
+        return contactIds;
+    }
+}
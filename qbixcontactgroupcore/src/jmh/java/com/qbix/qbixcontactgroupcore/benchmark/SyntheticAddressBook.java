@@ -0,0 +1,200 @@
+package com.qbix.qbixcontactgroupcore.benchmark;
+
+import com.qbix.qbixcontactgroupcore.ContactsDataSource;
+import com.qbix.qbixcontactgroupcore.LabelRow;
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * In-memory address book generated from seed, shaped like Contacts Provider data:
+ * every label has a group row in every account, every contact has a rawContact in one or two
+ * accounts and every rawContact is a member of its account's group rows. Label sizes are skewed,
+ * so there are a few big labels and many small ones.
+ * Filtered reads use prebuilt indexes, so benchmarks measure resolution, not the data source.
+ */
+class SyntheticAddressBook implements ContactsDataSource {
+
+    static final String SOURCE_ID_PREFIX = "label-";
+    static final String ACCOUNT_NAME_PREFIX = "account-";
+    static final String ACCOUNT_TYPE = "com.google";
+
+    private final int labelCount;
+    private final int accountCount;
+
+    //RawContacts: rawContactId is index + 1
+    private final int[] contactIdsByRaw;
+    private final int[] rawAccounts;
+    private final int[][] rawIdsByContact;
+    //Memberships
+    private final int[] membershipRawIds;
+    private final int[] membershipContactIds;
+    private final int[] membershipLabelIds;
+    private final int[][] membershipsByLabelId;
+    private final int[][] membershipsByRawId;
+
+    /**
+     * @param contactCount     Count of contacts
+     * @param labelCount       Count of labels (sourceIds)
+     * @param accountCount     Count of accounts
+     * @param labelsPerContact Average count of labels of one contact
+     * @param seed             Seed of generator
+     */
+    SyntheticAddressBook(int contactCount, int labelCount, int accountCount, int labelsPerContact, long seed) {
+        this.labelCount = labelCount;
+        this.accountCount = accountCount;
+        Random random = new Random(seed);
+
+        IntArrayList rawContacts = new IntArrayList(contactCount * 2);
+        IntArrayList accounts = new IntArrayList(contactCount * 2);
+        rawIdsByContact = new int[contactCount + 1][];
+        for (int contactId = 1; contactId <= contactCount; contactId++) {
+            int firstAccount = random.nextInt(accountCount);
+            boolean linked = accountCount > 1 && random.nextInt(10) < 3;
+            rawIdsByContact[contactId] = new int[linked ? 2 : 1];
+            for (int i = 0; i < rawIdsByContact[contactId].length; i++) {
+                rawContacts.add(contactId);
+                accounts.add((firstAccount + i) % accountCount);
+                rawIdsByContact[contactId][i] = rawContacts.size();
+            }
+        }
+        contactIdsByRaw = rawContacts.toArray();
+        rawAccounts = accounts.toArray();
+
+        IntArrayList raws = new IntArrayList();
+        IntArrayList contacts = new IntArrayList();
+        IntArrayList labelIds = new IntArrayList();
+        for (int contactId = 1; contactId <= contactCount; contactId++) {
+            int count = random.nextInt(labelsPerContact * 2 + 1);
+            for (int i = 0; i < count; i++) {
+                double r = random.nextDouble();
+                int label = (int) (labelCount * r * r);
+                for (int rawId : rawIdsByContact[contactId]) {
+                    raws.add(rawId);
+                    contacts.add(contactId);
+                    labelIds.add(getLabelId(label, rawAccounts[rawId - 1]));
+                }
+            }
+        }
+        membershipRawIds = raws.toArray();
+        membershipContactIds = contacts.toArray();
+        membershipLabelIds = labelIds.toArray();
+        membershipsByLabelId = index(membershipLabelIds, labelCount * accountCount + 1);
+        membershipsByRawId = index(membershipRawIds, contactIdsByRaw.length + 1);
+    }
+
+    int getContactCount() {
+        return rawIdsByContact.length - 1;
+    }
+
+    int getLabelCount() {
+        return labelCount;
+    }
+
+    @Override
+    public void readGroups(String[] sourceIds, GroupVisitor visitor) {
+        if (sourceIds == null) {
+            for (int label = 0; label < labelCount; label++) {
+                visitLabel(label, visitor);
+            }
+            return;
+        }
+        for (String sourceId : sourceIds) {
+            int label = Integer.parseInt(sourceId.substring(SOURCE_ID_PREFIX.length()));
+            if (label >= 0 && label < labelCount) {
+                visitLabel(label, visitor);
+            }
+        }
+    }
+
+    @Override
+    public void readRawContacts(int[] contactIds, RawContactVisitor visitor) {
+        for (int contactId : contactIds) {
+            if (contactId <= 0 || contactId >= rawIdsByContact.length) {
+                continue;
+            }
+            for (int rawId : rawIdsByContact[contactId]) {
+                visitor.visit(rawId, contactId, ACCOUNT_NAME_PREFIX + rawAccounts[rawId - 1], ACCOUNT_TYPE);
+            }
+        }
+    }
+
+    @Override
+    public void readMembershipsByLabel(int[] labelIds, MembershipVisitor visitor) {
+        if (labelIds == null) {
+            for (int i = 0; i < membershipRawIds.length; i++) {
+                visitor.visit(membershipRawIds[i], membershipContactIds[i], membershipLabelIds[i]);
+            }
+            return;
+        }
+        visitIndexed(labelIds, membershipsByLabelId, visitor);
+    }
+
+    @Override
+    public void readMembershipsByRawContact(int[] rawContactIds, MembershipVisitor visitor) {
+        visitIndexed(rawContactIds, membershipsByRawId, visitor);
+    }
+
+    private void visitLabel(int label, GroupVisitor visitor) {
+        for (int account = 0; account < accountCount; account++) {
+            LabelRow row = new LabelRow();
+            row.labelId = getLabelId(label, account);
+            row.sourceId = SOURCE_ID_PREFIX + label;
+            row.title = "Label " + label;
+            row.accountName = ACCOUNT_NAME_PREFIX + account;
+            row.accountType = ACCOUNT_TYPE;
+            row.isVisible = true;
+            row.shouldSync = true;
+            visitor.visit(row);
+        }
+    }
+
+    private void visitIndexed(int[] keys, int[][] index, MembershipVisitor visitor) {
+        for (int key : keys) {
+            if (key <= 0 || key >= index.length) {
+                continue;
+            }
+            for (int i : index[key]) {
+                visitor.visit(membershipRawIds[i], membershipContactIds[i], membershipLabelIds[i]);
+            }
+        }
+    }
+
+    private int getLabelId(int label, int account) {
+        return label * accountCount + account + 1;
+    }
+
+    /**
+     * @param keys Key of every membership
+     * @param size Max key + 1
+     * @return indexes of memberships for every key
+     */
+    private static int[][] index(int[] keys, int size) {
+        int[] counts = new int[size];
+        for (int key : keys) {
+            counts[key]++;
+        }
+        int[][] index = new int[size][];
+        for (int key = 0; key < size; key++) {
+            index[key] = new int[counts[key]];
+            counts[key] = 0;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            index[keys[i]][counts[keys[i]]++] = i;
+        }
+        return index;
+    }
+
+    /**
+     * @return names of all accounts
+     */
+    Set<String> getAccountNames() {
+        Set<String> names = new HashSet<>();
+        for (int account = 0; account < accountCount; account++) {
+            names.add(ACCOUNT_NAME_PREFIX + account);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,56 @@
+package com.qbix.qbixcontactgroupcore;
+
+/**
+ * Source of raw address book rows which labels are resolved from. On device it is backed by
+ * Contacts Provider, in benchmarks by synthetic in-memory address book.
+ * Rows are pushed to visitors one by one, so implementations don't have to keep them in memory.
+ */
+public interface ContactsDataSource {
+
+    interface GroupVisitor {
+        /**
+         * @param row Group row, owned by visitor after the call
+         */
+        void visit(LabelRow row);
+    }
+
+    interface RawContactVisitor {
+        void visit(int rawContactId, int contactId, String accountName, String accountType);
+    }
+
+    interface MembershipVisitor {
+        void visit(int rawContactId, int contactId, int labelId);
+    }
+
+    /**
+     * Reads group rows of all accounts.
+     *
+     * @param sourceIds Source ids of groups that must be read or null for all groups
+     * @param visitor   Visitor of every row
+     */
+    void readGroups(String[] sourceIds, GroupVisitor visitor);
+
+    /**
+     * Reads rawContacts of given contacts.
+     *
+     * @param contactIds Ids of contacts which rawContacts must be read
+     * @param visitor    Visitor of every rawContact
+     */
+    void readRawContacts(int[] contactIds, RawContactVisitor visitor);
+
+    /**
+     * Reads group memberships of given labels.
+     *
+     * @param labelIds Ids of labels (group row ids) which memberships must be read or null for all
+     * @param visitor  Visitor of every membership
+     */
+    void readMembershipsByLabel(int[] labelIds, MembershipVisitor visitor);
+
+    /**
+     * Reads group memberships of given rawContacts.
+     *
+     * @param rawContactIds Ids of rawContacts which memberships must be read
+     * @param visitor       Visitor of every membership
+     */
+    void readMembershipsByRawContact(int[] rawContactIds, MembershipVisitor visitor);
+}
@@ -0,0 +1,13 @@
+package com.qbix.qbixcontactgroupcore;
+
+public class LabelOperation {
+    public boolean add;         //true - add label to contacts, false - remove label from contacts
+    public String sourceId;
+    public String[] contactIds;
+
+    public LabelOperation(boolean add, String sourceId, String[] contactIds) {
+        this.add = add;
+        this.sourceId = sourceId;
+        this.contactIds = contactIds;
+    }
+}
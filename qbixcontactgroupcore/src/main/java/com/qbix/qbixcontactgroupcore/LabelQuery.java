@@ -0,0 +1,119 @@
+package com.qbix.qbixcontactgroupcore;
+
+import com.qbix.qbixcontactgroupcore.collections.IntBitmap;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set expression over label members: a label, or union, intersection or difference of
+ * sub-expressions. Evaluated over {@link IntBitmap} members of labels, so only the result has
+ * to leave native code.
+ */
+public class LabelQuery {
+
+    public enum Operator {
+        LABEL,
+        UNION,
+        INTERSECTION,
+        DIFFERENCE      //members of the first operand which are in none of the others
+    }
+
+    /**
+     * Source of label members.
+     */
+    public interface Members {
+        /**
+         * @param sourceId SourceId of the label
+         * @return contact ids of the label, empty if there is no such label
+         */
+        IntBitmap get(String sourceId);
+    }
+
+    public final Operator operator;
+    public final String sourceId;               //only for LABEL
+    public final List<LabelQuery> operands;     //empty for LABEL
+
+    private LabelQuery(Operator operator, String sourceId, List<LabelQuery> operands) {
+        this.operator = operator;
+        this.sourceId = sourceId;
+        this.operands = operands;
+    }
+
+    public static LabelQuery label(String sourceId) {
+        return new LabelQuery(Operator.LABEL, sourceId, Collections.<LabelQuery>emptyList());
+    }
+
+    /**
+     * @param operator   One of UNION, INTERSECTION and DIFFERENCE
+     * @param operands   Sub-expressions, DIFFERENCE needs at least one
+     * @return expression over operands
+     */
+    public static LabelQuery of(Operator operator, List<LabelQuery> operands) {
+        if (operator == Operator.LABEL) {
+            throw new IllegalArgumentException("use label() for LABEL expression");
+        }
+        if (operator == Operator.DIFFERENCE && operands.isEmpty()) {
+            throw new IllegalArgumentException("difference needs at least one operand");
+        }
+        return new LabelQuery(operator, null, Collections.unmodifiableList(operands));
+    }
+
+    /**
+     * @return sourceIds of all labels used by the expression
+     */
+    public Set<String> getSourceIds() {
+        Set<String> sourceIds = new LinkedHashSet<>();
+        collectSourceIds(sourceIds);
+        return sourceIds;
+    }
+
+    private void collectSourceIds(Set<String> sourceIds) {
+        if (operator == Operator.LABEL) {
+            sourceIds.add(sourceId);
+        }
+        for (LabelQuery operand : operands) {
+            operand.collectSourceIds(sourceIds);
+        }
+    }
+
+    /**
+     * Evaluates expression. Intersection and difference stop as soon as result gets empty.
+     * Union or intersection of no operands is empty.
+     *
+     * @param members Source of label members
+     * @return contact ids matched by the expression
+     */
+    public IntBitmap evaluate(Members members) {
+        switch (operator) {
+            case LABEL:
+                return members.get(sourceId);
+            case UNION: {
+                IntBitmap result = IntBitmap.EMPTY;
+                for (LabelQuery operand : operands) {
+                    result = result.or(operand.evaluate(members));
+                }
+                return result;
+            }
+            case INTERSECTION: {
+                if (operands.isEmpty()) {
+                    return IntBitmap.EMPTY;
+                }
+                IntBitmap result = operands.get(0).evaluate(members);
+                for (int i = 1; i < operands.size() && !result.isEmpty(); i++) {
+                    result = result.and(operands.get(i).evaluate(members));
+                }
+                return result;
+            }
+            default: {
+                IntBitmap result = operands.get(0).evaluate(members);
+                for (int i = 1; i < operands.size() && !result.isEmpty(); i++) {
+                    result = result.andNot(operands.get(i).evaluate(members));
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.qbix.qbixcontactgroupcore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of {@link LabelResolver#resolveAll(ContactsDataSource)}. Rows and their contactIds are
+ * shared by all readers, so they must not be modified after resolution.
+ */
+public class LabelResolution {
+
+    /**
+     * Group rows of all accounts in data source order.
+     */
+    public final List<LabelRow> rows;
+    /**
+     * Merged labels in data source order: the first row of every sourceId and every row without
+     * sourceId (same objects as in {@link #rows}).
+     */
+    public final List<LabelRow> labels;
+    /**
+     * Rows of every account for each sourceId, in data source order.
+     */
+    private final HashMap<String, List<LabelRow>> rowsBySourceId;
+
+    LabelResolution(List<LabelRow> rows, List<LabelRow> labels, HashMap<String, List<LabelRow>> rowsBySourceId) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.labels = Collections.unmodifiableList(labels);
+        this.rowsBySourceId = rowsBySourceId;
+    }
+
+    /**
+     * Gets labels that have given sourceIds. For each sourceId returns row of the first
+     * account which is still available on the device.
+     *
+     * @param sourceIds    Source ids which labels wanted to be returned
+     * @param accountNames Names of accounts available on the device
+     * @return rows in order of given sourceIds
+     */
+    public List<LabelRow> getLabelsBySourceId(String[] sourceIds, Set<String> accountNames) {
+        List<LabelRow> result = new ArrayList<>();
+        for (String sourceId : sourceIds) {
+            List<LabelRow> sourceIdRows = sourceId == null ? null : rowsBySourceId.get(sourceId);
+            if (sourceIdRows == null) {
+                continue;
+            }
+            for (LabelRow row : sourceIdRows) {
+                if (accountNames.contains(row.accountName)) {
+                    result.add(row);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
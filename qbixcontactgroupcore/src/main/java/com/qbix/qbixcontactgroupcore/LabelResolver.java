@@ -0,0 +1,314 @@
+package com.qbix.qbixcontactgroupcore;
+
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+import com.qbix.qbixcontactgroupcore.collections.IntIntHashMap;
+import com.qbix.qbixcontactgroupcore.collections.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Joins group, rawContact and membership rows of {@link ContactsDataSource} into labels and
+ * plans membership changes. Has no platform dependencies, so every path can be benchmarked
+ * on plain JVM.
+ */
+public class LabelResolver {
+
+    /**
+     * Resolves all labels with one pass over groups and one pass over memberships.
+     * Groups of different accounts with the same sourceId are merged into the first one (groups
+     * without sourceId stay separate labels), the same contact is kept once per label even if it is
+     * a member in several accounts. summaryCount of every row is counted from the same memberships.
+     *
+     * @param dataSource Source of rows
+     * @return resolved labels
+     */
+    public static LabelResolution resolveAll(ContactsDataSource dataSource) {
+        final List<LabelRow> rows = new ArrayList<>();
+        final List<LabelRow> labels = new ArrayList<>();
+        final HashMap<String, Integer> labelIndexBySourceId = new HashMap<>();
+        final HashMap<String, List<LabelRow>> rowsBySourceId = new HashMap<>();
+        //key - label id of any account, value - index of merged label
+        final IntIntHashMap labelIndexById = new IntIntHashMap();
+        final IntIntHashMap rowIndexById = new IntIntHashMap();
+        dataSource.readGroups(null, new ContactsDataSource.GroupVisitor() {
+            @Override
+            public void visit(LabelRow row) {
+                rowIndexById.put(row.labelId, rows.size());
+                rows.add(row);
+                Integer index = row.sourceId == null ? null : labelIndexBySourceId.get(row.sourceId);
+                if (index == null) {
+                    index = labels.size();
+                    row.contactIds = new IntArrayList();
+                    labels.add(row);
+                    if (row.sourceId != null) {
+                        labelIndexBySourceId.put(row.sourceId, index);
+                    }
+                }
+                labelIndexById.put(row.labelId, index);
+                if (row.sourceId != null) {
+                    List<LabelRow> sourceIdRows = rowsBySourceId.get(row.sourceId);
+                    if (sourceIdRows == null) {
+                        sourceIdRows = new ArrayList<>(2);
+                        rowsBySourceId.put(row.sourceId, sourceIdRows);
+                    }
+                    sourceIdRows.add(row);
+                }
+            }
+        });
+        dataSource.readMembershipsByLabel(null, new MemberCollector(labels, labelIndexById, rows, rowIndexById));
+        //Every account's row of a label carries members of the whole label
+        for (LabelRow row : rows) {
+            row.contactIds = labels.get(labelIndexById.get(row.labelId, -1)).contactIds;
+        }
+        return new LabelResolution(rows, labels, rowsBySourceId);
+    }
+
+    /**
+     * Resolves labels that have given sourceIds, reading only their groups and memberships.
+     * For each sourceId returns row of the first account which is available on the device,
+     * with members of all accounts. summaryCount of the row is counted from the same memberships,
+     * same as {@link #resolveAll(ContactsDataSource)} does.
+     *
+     * @param dataSource   Source of rows
+     * @param sourceIds    Source ids which labels wanted to be returned
+     * @param accountNames Names of accounts available on the device
+     * @return labels in order of given sourceIds
+     */
+    public static List<LabelRow> resolveBySourceId(ContactsDataSource dataSource, String[] sourceIds,
+                                                   final Set<String> accountNames) {
+        final List<LabelRow> labels = new ArrayList<>();
+        final HashMap<String, Integer> labelIndexBySourceId = new HashMap<>();
+        final HashMap<String, IntArrayList> labelIdsBySourceId = new HashMap<>();
+        dataSource.readGroups(sourceIds, new ContactsDataSource.GroupVisitor() {
+            @Override
+            public void visit(LabelRow row) {
+                if (row.sourceId == null) {
+                    return;
+                }
+                IntArrayList labelIds = labelIdsBySourceId.get(row.sourceId);
+                if (labelIds == null) {
+                    labelIds = new IntArrayList(2);
+                    labelIdsBySourceId.put(row.sourceId, labelIds);
+                }
+                labelIds.add(row.labelId);
+                if (!labelIndexBySourceId.containsKey(row.sourceId) && accountNames.contains(row.accountName)) {
+                    row.contactIds = new IntArrayList();
+                    labelIndexBySourceId.put(row.sourceId, labels.size());
+                    labels.add(row);
+                }
+            }
+        });
+        IntIntHashMap labelIndexById = new IntIntHashMap();
+        //Returned rows are labels themselves
+        IntIntHashMap rowIndexById = new IntIntHashMap();
+        IntArrayList labelIds = new IntArrayList();
+        for (int index = 0; index < labels.size(); index++) {
+            rowIndexById.put(labels.get(index).labelId, index);
+            IntArrayList sourceIdLabelIds = labelIdsBySourceId.get(labels.get(index).sourceId);
+            for (int i = 0; i < sourceIdLabelIds.size(); i++) {
+                labelIndexById.put(sourceIdLabelIds.get(i), index);
+            }
+            labelIds.addAll(sourceIdLabelIds);
+        }
+        if (!labelIds.isEmpty()) {
+            dataSource.readMembershipsByLabel(labelIds.toArray(),
+                    new MemberCollector(labels, labelIndexById, labels, rowIndexById));
+        }
+        List<LabelRow> result = new ArrayList<>();
+        for (String sourceId : sourceIds) {
+            Integer index = sourceId == null ? null : labelIndexBySourceId.get(sourceId);
+            if (index != null) {
+                result.add(labels.get(index));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Plans net membership changes of add/remove operations. RawContacts of all contacts, label ids
+     * of all sourceIds and existing memberships of all rawContacts are read once and shared by
+     * all operations. Operations are applied in given order to in-memory memberships, so adding
+     * back a membership removed earlier in the list cancels the removal and vice versa.
+     * Every rawContact gets the label of its own account (name and type, accounts of different types
+     * with the same name have separate group rows).
+     *
+     * @param dataSource Source of rows
+     * @param operations Add/remove operations
+     * @return memberships to insert and delete
+     */
+    public static MembershipChanges planUpdates(ContactsDataSource dataSource, List<LabelOperation> operations) {
+        LinkedHashSet<String> sourceIdSet = new LinkedHashSet<>();
+        final IntIntHashMap contactIndexById = new IntIntHashMap();
+        IntArrayList contactIds = new IntArrayList();
+        for (LabelOperation operation : operations) {
+            sourceIdSet.add(operation.sourceId);
+            for (String contactId : operation.contactIds) {
+                int id = parseId(contactId);
+                if (id >= 0 && !contactIndexById.containsKey(id)) {
+                    contactIndexById.put(id, contactIds.size());
+                    contactIds.add(id);
+                }
+            }
+        }
+        //Accounts are replaced with indexes, so rawContact and label lookups stay primitive
+        final HashMap<String, Integer> accountIndexByKey = new HashMap<>();
+        final IntIntHashMap accountIndexByRawId = new IntIntHashMap();
+        final List<IntArrayList> rawIdsByContactIndex = new ArrayList<>(contactIds.size());
+        for (int i = 0; i < contactIds.size(); i++) {
+            rawIdsByContactIndex.add(new IntArrayList(2));
+        }
+        final IntArrayList rawIds = new IntArrayList();
+        if (!contactIds.isEmpty()) {
+            dataSource.readRawContacts(contactIds.toArray(), new ContactsDataSource.RawContactVisitor() {
+                @Override
+                public void visit(int rawContactId, int contactId, String accountName, String accountType) {
+                    int contactIndex = contactIndexById.get(contactId, -1);
+                    if (contactIndex < 0) {
+                        return;
+                    }
+                    rawIdsByContactIndex.get(contactIndex).add(rawContactId);
+                    rawIds.add(rawContactId);
+                    accountIndexByRawId.put(rawContactId, getAccountIndex(accountIndexByKey, accountName, accountType));
+                }
+            });
+        }
+        //key - sourceId, value - label id of every account (key - account index, value - label id)
+        final HashMap<String, IntIntHashMap> labelIdsBySourceId = new HashMap<>();
+        dataSource.readGroups(sourceIdSet.toArray(new String[sourceIdSet.size()]), new ContactsDataSource.GroupVisitor() {
+            @Override
+            public void visit(LabelRow row) {
+                IntIntHashMap accountLabelIds = labelIdsBySourceId.get(row.sourceId);
+                if (accountLabelIds == null) {
+                    accountLabelIds = new IntIntHashMap(4);
+                    labelIdsBySourceId.put(row.sourceId, accountLabelIds);
+                }
+                accountLabelIds.put(getAccountIndex(accountIndexByKey, row.accountName, row.accountType), row.labelId);
+            }
+        });
+        //Memberships as they will be after already planned operations
+        final LongHashSet memberships = new LongHashSet(rawIds.size() * 2);
+        if (!rawIds.isEmpty()) {
+            dataSource.readMembershipsByRawContact(rawIds.toArray(), new ContactsDataSource.MembershipVisitor() {
+                @Override
+                public void visit(int rawContactId, int contactId, int labelId) {
+                    memberships.add(Memberships.pack(rawContactId, labelId));
+                }
+            });
+        }
+        LongHashSet pendingInserts = new LongHashSet();
+        LongHashSet pendingDeletes = new LongHashSet();
+        for (LabelOperation operation : operations) {
+            IntIntHashMap accountLabelIds = labelIdsBySourceId.get(operation.sourceId);
+            if (accountLabelIds == null) {
+                continue;
+            }
+            for (String contactId : operation.contactIds) {
+                int contactIndex = contactIndexById.get(parseId(contactId), -1);
+                if (contactIndex < 0) {
+                    continue;
+                }
+                IntArrayList contactRawIds = rawIdsByContactIndex.get(contactIndex);
+                for (int i = 0; i < contactRawIds.size(); i++) {
+                    int rawId = contactRawIds.get(i);
+                    int labelId = accountLabelIds.get(accountIndexByRawId.get(rawId, -1), -1);
+                    if (labelId < 0) {
+                        continue;
+                    }
+                    long membership = Memberships.pack(rawId, labelId);
+                    if (operation.add) {
+                        //Adding back a membership removed earlier in the batch just cancels the removal
+                        if (memberships.add(membership) && !pendingDeletes.remove(membership)) {
+                            pendingInserts.add(membership);
+                        }
+                    } else {
+                        if (memberships.remove(membership) && !pendingInserts.remove(membership)) {
+                            pendingDeletes.add(membership);
+                        }
+                    }
+                }
+            }
+        }
+        final HashMap<Integer, IntArrayList> deletesByLabelId = new HashMap<>();
+        pendingDeletes.forEach(new LongHashSet.Visitor() {
+            @Override
+            public void visit(long membership) {
+                int labelId = Memberships.unpackLabelId(membership);
+                IntArrayList labelRawIds = deletesByLabelId.get(labelId);
+                if (labelRawIds == null) {
+                    labelRawIds = new IntArrayList();
+                    deletesByLabelId.put(labelId, labelRawIds);
+                }
+                labelRawIds.add(Memberships.unpackRawContactId(membership));
+            }
+        });
+        return new MembershipChanges(pendingInserts, deletesByLabelId);
+    }
+
+    /**
+     * @return index of account, accounts are told apart by name and type
+     */
+    private static int getAccountIndex(HashMap<String, Integer> accountIndexByKey, String accountName,
+                                       String accountType) {
+        String key = accountName + "\n" + accountType;
+        Integer index = accountIndexByKey.get(key);
+        if (index == null) {
+            index = accountIndexByKey.size();
+            accountIndexByKey.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param id Id as string
+     * @return id or -1 if it is not a non-negative int
+     */
+    private static int parseId(String id) {
+        try {
+            return id == null ? -1 : Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Adds member contactIds to merged labels, keeping every contact once per label, and counts
+     * members of every row's own group into its summaryCount.
+     */
+    private static class MemberCollector implements ContactsDataSource.MembershipVisitor {
+        private final List<LabelRow> labels;
+        private final IntIntHashMap labelIndexById;
+        private final List<LabelRow> rows;
+        private final IntIntHashMap rowIndexById;
+        //(label index, contactId) pairs already added
+        private final LongHashSet added = new LongHashSet();
+        //(row index, contactId) pairs already counted
+        private final LongHashSet counted = new LongHashSet();
+
+        MemberCollector(List<LabelRow> labels, IntIntHashMap labelIndexById, List<LabelRow> rows,
+                        IntIntHashMap rowIndexById) {
+            this.labels = labels;
+            this.labelIndexById = labelIndexById;
+            this.rows = rows;
+            this.rowIndexById = rowIndexById;
+            for (LabelRow row : rows) {
+                row.summaryCount = 0;
+            }
+        }
+
+        @Override
+        public void visit(int rawContactId, int contactId, int labelId) {
+            int index = labelIndexById.get(labelId, -1);
+            if (index >= 0 && added.add(((long) index << 32) | (contactId & 0xFFFFFFFFL))) {
+                labels.get(index).contactIds.add(contactId);
+            }
+            int rowIndex = rowIndexById.get(labelId, -1);
+            if (rowIndex >= 0 && counted.add(((long) rowIndex << 32) | (contactId & 0xFFFFFFFFL))) {
+                rows.get(rowIndex).summaryCount++;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.qbix.qbixcontactgroupcore;
+
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+
+/**
+ * Group row of one account. After resolution rows with the same sourceId share
+ * {@link #contactIds} of the whole label.
+ */
+public class LabelRow {
+
+    public int labelId;
+    public String sourceId;
+    public String title;
+    public String accountName;
+    public String accountType;
+    public String notes;
+    //Count of contacts which are members of this row's group (not of the whole label)
+    public int summaryCount;
+    public boolean isVisible;
+    public boolean isDeleted;
+    public boolean shouldSync;
+    public boolean readOnly;
+    public IntArrayList contactIds;
+}
@@ -0,0 +1,27 @@
+package com.qbix.qbixcontactgroupcore;
+
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+import com.qbix.qbixcontactgroupcore.collections.LongHashSet;
+
+import java.util.HashMap;
+
+/**
+ * Net membership changes planned by {@link LabelResolver#planUpdates(ContactsDataSource, java.util.List)}.
+ */
+public class MembershipChanges {
+
+    /**
+     * Memberships that must be inserted, packed with {@link Memberships#pack(int, int)}.
+     */
+    public final LongHashSet inserts;
+    /**
+     * RawContacts which membership must be deleted, grouped by label id
+     * (key - label id, value - rawContactIds).
+     */
+    public final HashMap<Integer, IntArrayList> deletesByLabelId;
+
+    MembershipChanges(LongHashSet inserts, HashMap<Integer, IntArrayList> deletesByLabelId) {
+        this.inserts = inserts;
+        this.deletesByLabelId = deletesByLabelId;
+    }
+}
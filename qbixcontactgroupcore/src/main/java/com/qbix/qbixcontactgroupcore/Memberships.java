@@ -0,0 +1,23 @@
+package com.qbix.qbixcontactgroupcore;
+
+/**
+ * Packs (rawContactId, labelId) membership pairs into one long, so sets of memberships
+ * are kept without boxing.
+ */
+public class Memberships {
+
+    /**
+     * Packs rawContactId and label id into one long key (rawContactId - high 32 bits, label id - low 32 bits).
+     */
+    public static long pack(int rawContactId, int labelId) {
+        return ((long) rawContactId << 32) | (labelId & 0xFFFFFFFFL);
+    }
+
+    public static int unpackRawContactId(long membership) {
+        return (int) (membership >>> 32);
+    }
+
+    public static int unpackLabelId(long membership) {
+        return (int) membership;
+    }
+}
@@ -0,0 +1,78 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive ints. Used instead of {@code List<Integer>} for contact and
+ * rawContact ids, so ids are never boxed while resolving labels.
+ */
+public class IntArrayList {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] elements;
+    private int size;
+
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArrayList(int capacity) {
+        elements = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends value to the end of the list.
+     *
+     * @param value Value to be added
+     */
+    public void add(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Appends all values of other list to the end of this list.
+     *
+     * @param other List which values must be added
+     */
+    public void addAll(IntArrayList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.elements, 0, elements, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + " size: " + size);
+        }
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return copy of the list values trimmed to list size
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length << 1));
+        }
+    }
+}
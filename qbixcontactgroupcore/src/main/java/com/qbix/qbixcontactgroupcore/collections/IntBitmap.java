@@ -0,0 +1,545 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of ints in the style of Roaring bitmaps. Values are split by their high 16 bits
+ * into containers, and every container keeps the low 16 bits in the smallest of three forms:
+ * sorted array (sparse members), 65536-bit bitmap (dense members) or runs of consecutive values
+ * (ids of contacts imported together). Used for label members, so union, intersection and
+ * difference of labels cost per container instead of per contact.
+ * <p>
+ * Bitmaps are immutable: operations return new bitmaps which may share containers with operands.
+ * Values are ordered as unsigned ints.
+ */
+public class IntBitmap {
+
+    /**
+     * Array container is used up to this cardinality, so it is never bigger than a bitmap one.
+     */
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int BITMAP_BYTES = BITMAP_WORDS * 8;
+
+    public static final IntBitmap EMPTY = new IntBitmap(new char[0], new Container[0], 0);
+
+    //High 16 bits of values of each container, sorted
+    private final char[] keys;
+    private final Container[] containers;
+    private final int size;
+    private final int cardinality;
+
+    private IntBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Builds bitmap of given values.
+     *
+     * @param values Values in any order, duplicates are allowed
+     * @return bitmap of values
+     */
+    public static IntBitmap of(int[] values) {
+        if (values.length == 0) {
+            return EMPTY;
+        }
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        //Signed sort puts negative values first, unsigned order needs them last
+        int firstNonNegative = 0;
+        while (firstNonNegative < sorted.length && sorted[firstNonNegative] < 0) {
+            firstNonNegative++;
+        }
+        if (firstNonNegative > 0 && firstNonNegative < sorted.length) {
+            int[] rotated = new int[sorted.length];
+            System.arraycopy(sorted, firstNonNegative, rotated, 0, sorted.length - firstNonNegative);
+            System.arraycopy(sorted, 0, rotated, sorted.length - firstNonNegative, firstNonNegative);
+            sorted = rotated;
+        }
+        char[] keys = new char[8];
+        Container[] containers = new Container[8];
+        int size = 0;
+        char[] lows = new char[Math.min(sorted.length, 1 << 16)];
+        int i = 0;
+        while (i < sorted.length) {
+            int key = sorted[i] >>> 16;
+            int count = 0;
+            int previous = -1;
+            while (i < sorted.length && (sorted[i] >>> 16) == key) {
+                char low = (char) sorted[i++];
+                if (low != previous) {
+                    lows[count++] = low;
+                    previous = low;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+                containers = Arrays.copyOf(containers, size << 1);
+            }
+            keys[size] = (char) key;
+            containers[size++] = Container.fromSorted(lows, count);
+        }
+        return new IntBitmap(keys, containers, size);
+    }
+
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * @return values of the bitmap in unsigned order
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            offset = containers[i].toArray(keys[i] << 16, values, offset);
+        }
+        return values;
+    }
+
+    /**
+     * @return bytes taken by values of all containers (2 per array value, 8192 per bitmap and
+     * 4 per run), without keys and object headers
+     */
+    int sizeInBytes() {
+        int bytes = 0;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @param other Bitmap to intersect with
+     * @return values that are in both bitmaps
+     */
+    public IntBitmap and(IntBitmap other) {
+        char[] resultKeys = new char[Math.min(size, other.size)];
+        Container[] resultContainers = new Container[resultKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = Container.and(containers[i], other.containers[j]);
+                if (container != null) {
+                    resultKeys[count] = keys[i];
+                    resultContainers[count++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new IntBitmap(resultKeys, resultContainers, count);
+    }
+
+    /**
+     * @param other Bitmap to unite with
+     * @return values that are in any of bitmaps
+     */
+    public IntBitmap or(IntBitmap other) {
+        char[] resultKeys = new char[size + other.size];
+        Container[] resultContainers = new Container[resultKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                resultKeys[count] = keys[i];
+                resultContainers[count++] = containers[i++];
+            } else if (i == size || keys[i] > other.keys[j]) {
+                resultKeys[count] = other.keys[j];
+                resultContainers[count++] = other.containers[j++];
+            } else {
+                resultKeys[count] = keys[i];
+                resultContainers[count++] = Container.or(containers[i++], other.containers[j++]);
+            }
+        }
+        return new IntBitmap(resultKeys, resultContainers, count);
+    }
+
+    /**
+     * @param other Bitmap which values must be removed
+     * @return values of this bitmap that are not in other
+     */
+    public IntBitmap andNot(IntBitmap other) {
+        char[] resultKeys = new char[size];
+        Container[] resultContainers = new Container[size];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? Container.andNot(containers[i], other.containers[j])
+                    : containers[i];
+            if (container != null) {
+                resultKeys[count] = keys[i];
+                resultContainers[count++] = container;
+            }
+        }
+        return new IntBitmap(resultKeys, resultContainers, count);
+    }
+
+    /**
+     * Low 16 bits of values that share high 16 bits. Never empty and never changed after creation.
+     */
+    private abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract int sizeInBytes();
+
+        /**
+         * Writes values (with given high bits) to out.
+         *
+         * @return offset after the last written value
+         */
+        abstract int toArray(int high, int[] out, int offset);
+
+        /**
+         * Sets bits of container values in words.
+         */
+        abstract void orInto(long[] words);
+
+        /**
+         * @return bitmap words of container, must not be modified
+         */
+        abstract long[] words();
+
+        static Container and(Container a, Container b) {
+            if (a instanceof ArrayContainer) {
+                return ((ArrayContainer) a).filter(b, true);
+            }
+            if (b instanceof ArrayContainer) {
+                return ((ArrayContainer) b).filter(a, true);
+            }
+            long[] words = a.words().clone();
+            long[] other = b.words();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] &= other[i];
+            }
+            return fromWords(words);
+        }
+
+        static Container or(Container a, Container b) {
+            if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+                return ((ArrayContainer) a).merge((ArrayContainer) b);
+            }
+            long[] words = a.words().clone();
+            b.orInto(words);
+            return fromWords(words);
+        }
+
+        static Container andNot(Container a, Container b) {
+            if (a instanceof ArrayContainer) {
+                return ((ArrayContainer) a).filter(b, false);
+            }
+            long[] words = a.words().clone();
+            long[] other = b.words();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] &= ~other[i];
+            }
+            return fromWords(words);
+        }
+
+        /**
+         * Picks the smallest form for sorted distinct values.
+         *
+         * @return container or null if count is 0
+         */
+        static Container fromSorted(char[] values, int count) {
+            if (count == 0) {
+                return null;
+            }
+            int runs = 1;
+            for (int i = 1; i < count; i++) {
+                if (values[i] != values[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            int arrayBytes = count <= MAX_ARRAY_CARDINALITY ? count * 2 : Integer.MAX_VALUE;
+            if (runs * 4 < Math.min(arrayBytes, BITMAP_BYTES)) {
+                char[] starts = new char[runs];
+                char[] lengths = new char[runs];
+                int run = 0;
+                starts[0] = values[0];
+                for (int i = 1; i < count; i++) {
+                    if (values[i] != values[i - 1] + 1) {
+                        lengths[run] = (char) (values[i - 1] - starts[run]);
+                        starts[++run] = values[i];
+                    }
+                }
+                lengths[run] = (char) (values[count - 1] - starts[run]);
+                return new RunContainer(starts, lengths, count);
+            }
+            if (arrayBytes < BITMAP_BYTES) {
+                return new ArrayContainer(Arrays.copyOf(values, count));
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitmapContainer(words, count);
+        }
+
+        /**
+         * Picks the smallest form for set bits of words.
+         *
+         * @param words Bitmap words, kept by bitmap container
+         * @return container or null if no bit is set
+         */
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            int runs = 0;
+            long previousWord = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+                //Run starts at a set bit which previous bit is not set
+                runs += Long.bitCount(word & ~((word << 1) | (previousWord >>> 63)));
+                previousWord = word;
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            int arrayBytes = cardinality <= MAX_ARRAY_CARDINALITY ? cardinality * 2 : Integer.MAX_VALUE;
+            if (runs * 4 >= Math.min(arrayBytes, BITMAP_BYTES) && arrayBytes >= BITMAP_BYTES) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return fromSorted(values, count);
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return values.length * 2;
+        }
+
+        @Override
+        int toArray(int high, int[] out, int offset) {
+            for (char value : values) {
+                out[offset++] = high | value;
+            }
+            return offset;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[BITMAP_WORDS];
+            orInto(words);
+            return words;
+        }
+
+        /**
+         * @param other Container to check values against
+         * @param keep  true to keep values which are in other, false to keep values which are not
+         */
+        Container filter(Container other, boolean keep) {
+            char[] result = new char[values.length];
+            int count = 0;
+            for (char value : values) {
+                if (other.contains(value) == keep) {
+                    result[count++] = value;
+                }
+            }
+            return fromSorted(result, count);
+        }
+
+        Container merge(ArrayContainer other) {
+            char[] result = new char[values.length + other.values.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length || j < other.values.length) {
+                if (j == other.values.length || (i < values.length && values[i] < other.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == values.length || values[i] > other.values[j]) {
+                    result[count++] = other.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return fromSorted(result, count);
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return BITMAP_BYTES;
+        }
+
+        @Override
+        int toArray(int high, int[] out, int offset) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    out[offset++] = high | ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        void orInto(long[] target) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                target[i] |= words[i];
+            }
+        }
+
+        @Override
+        long[] words() {
+            return words;
+        }
+    }
+
+    private static class RunContainer extends Container {
+        private final char[] starts;
+        //Run i covers starts[i]..starts[i] + lengths[i] inclusive
+        private final char[] lengths;
+        private final int cardinality;
+
+        RunContainer(char[] starts, char[] lengths, int cardinality) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            int index = Arrays.binarySearch(starts, value);
+            if (index >= 0) {
+                return true;
+            }
+            //Run with the greatest start below value
+            index = -index - 2;
+            return index >= 0 && value - starts[index] <= lengths[index];
+        }
+
+        @Override
+        int sizeInBytes() {
+            return starts.length * 4;
+        }
+
+        @Override
+        int toArray(int high, int[] out, int offset) {
+            for (int i = 0; i < starts.length; i++) {
+                int end = starts[i] + lengths[i];
+                for (int value = starts[i]; value <= end; value++) {
+                    out[offset++] = high | value;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < starts.length; i++) {
+                int from = starts[i];
+                int to = from + lengths[i];
+                int firstWord = from >>> 6;
+                int lastWord = to >>> 6;
+                long firstMask = -1L << from;
+                long lastMask = -1L >>> (63 - (to & 63));
+                if (firstWord == lastWord) {
+                    words[firstWord] |= firstMask & lastMask;
+                } else {
+                    words[firstWord] |= firstMask;
+                    for (int word = firstWord + 1; word < lastWord; word++) {
+                        words[word] = -1L;
+                    }
+                    words[lastWord] |= lastMask;
+                }
+            }
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[BITMAP_WORDS];
+            orInto(words);
+            return words;
+        }
+    }
+}
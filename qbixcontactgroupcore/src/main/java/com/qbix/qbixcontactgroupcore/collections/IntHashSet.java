@@ -0,0 +1,86 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+/**
+ * Open-addressing hash set of primitive ints with linear probing.
+ * Value {@link #FREE} (0) is stored out of the table, so every int value is supported.
+ */
+public class IntHashSet {
+
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int size;
+    private boolean hasFreeKey;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        keys = new int[IntIntHashMap.tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * Adds value to the set.
+     *
+     * @param value Value to be added
+     * @return true if value was not already in the set
+     */
+    public boolean add(int value) {
+        if (value == FREE) {
+            if (hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int index = IntIntHashMap.mix(value) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = value;
+        if (++size > (keys.length >> 1)) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value == FREE) {
+            return hasFreeKey;
+        }
+        int mask = keys.length - 1;
+        int index = IntIntHashMap.mix(value) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        keys = new int[capacity];
+        int mask = capacity - 1;
+        for (int key : oldKeys) {
+            if (key != FREE) {
+                int index = IntIntHashMap.mix(key) & mask;
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+/**
+ * Open-addressing int to int hash map with linear probing. Used for id to id mappings
+ * (e.g. rawContactId to contactId) instead of {@code HashMap<String, String>}, which keeps
+ * a map entry and two strings per row.
+ * Key {@link #FREE} (0) is stored out of the table, so every int key is supported.
+ */
+public class IntIntHashMap {
+
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasFreeKey;
+    private int freeValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Puts value for key, replacing previous value if any.
+     *
+     * @param key   Key of mapping
+     * @param value Value of mapping
+     */
+    public void put(int key, int value) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > (keys.length >> 1)) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Gets value of given key.
+     *
+     * @param key          Key which value is needed
+     * @param defaultValue Value that must be returned if there is no mapping for key
+     * @return value of key or defaultValue
+     */
+    public int get(int key, int defaultValue) {
+        if (key == FREE) {
+            return hasFreeKey ? freeValue : defaultValue;
+        }
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes mapping of given key.
+     *
+     * @param key Key which mapping must be removed
+     * @return true if there was a mapping for key
+     */
+    public boolean remove(int key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != key) {
+            if (keys[index] == FREE) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        //Shift following entries of the probe chain back, so lookups never stop at a hole
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Callback for every mapping of {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        void visit(int key, int value);
+    }
+
+    /**
+     * Visits every mapping in unspecified order.
+     *
+     * @param visitor Visitor which gets every key and its value
+     */
+    public void forEach(Visitor visitor) {
+        if (hasFreeKey) {
+            visitor.visit(FREE, freeValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int index = mix(oldKeys[i]) & mask;
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads sequential ids over the table (ids from provider are mostly sequential).
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return power of two table size that keeps load factor under 0.5 for expectedSize
+     */
+    static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < (long) expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
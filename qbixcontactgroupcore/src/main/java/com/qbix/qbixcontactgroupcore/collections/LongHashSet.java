@@ -0,0 +1,153 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+/**
+ * Open-addressing hash set of primitive longs with linear probing. Used for packed id pairs
+ * (see {@link com.qbix.qbixcontactgroupcore.Memberships#pack(int, int)}).
+ * Value {@link #FREE} (0) is stored out of the table, so every long value is supported.
+ */
+public class LongHashSet {
+
+    private static final long FREE = 0L;
+
+    private long[] keys;
+    private int size;
+    private boolean hasFreeKey;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        keys = new long[IntIntHashMap.tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * Adds value to the set.
+     *
+     * @param value Value to be added
+     * @return true if value was not already in the set
+     */
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int index = mix(value) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = value;
+        if (++size > (keys.length >> 1)) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Removes value from the set.
+     *
+     * @param value Value to be removed
+     * @return true if value was in the set
+     */
+    public boolean remove(long value) {
+        if (value == FREE) {
+            if (!hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int index = mix(value) & mask;
+        while (keys[index] != value) {
+            if (keys[index] == FREE) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        //Shift following entries of the probe chain back, so lookups never stop at a hole
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return hasFreeKey;
+        }
+        int mask = keys.length - 1;
+        int index = mix(value) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Callback for every value of {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        void visit(long value);
+    }
+
+    /**
+     * Visits every value in unspecified order.
+     *
+     * @param visitor Visitor which gets every value
+     */
+    public void forEach(Visitor visitor) {
+        if (hasFreeKey) {
+            visitor.visit(FREE);
+        }
+        for (long key : keys) {
+            if (key != FREE) {
+                visitor.visit(key);
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        keys = new long[capacity];
+        int mask = capacity - 1;
+        for (long key : oldKeys) {
+            if (key != FREE) {
+                int index = mix(key) & mask;
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        return IntIntHashMap.mix((int) (key ^ (key >>> 32)));
+    }
+}
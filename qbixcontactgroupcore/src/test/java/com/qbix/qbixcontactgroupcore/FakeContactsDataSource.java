@@ -0,0 +1,117 @@
+package com.qbix.qbixcontactgroupcore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hand-filled {@link ContactsDataSource} for resolver tests. Rows are returned in the order they
+ * were added, filtered reads only return rows of given ids. Accounts are of {@link #GOOGLE} type
+ * unless type is given.
+ */
+class FakeContactsDataSource implements ContactsDataSource {
+
+    static final String GOOGLE = "com.google";
+
+    private final List<LabelRow> groups = new ArrayList<>();
+    private final List<int[]> rawContacts = new ArrayList<>();     //rawContactId, contactId
+    private final HashMap<Integer, String[]> accountByRaw = new HashMap<>();      //name, type
+    private final List<int[]> memberships = new ArrayList<>();     //rawContactId, contactId, labelId
+
+    FakeContactsDataSource group(int labelId, String sourceId, String accountName) {
+        return group(labelId, sourceId, accountName, GOOGLE);
+    }
+
+    FakeContactsDataSource group(int labelId, String sourceId, String accountName, String accountType) {
+        LabelRow row = new LabelRow();
+        row.labelId = labelId;
+        row.sourceId = sourceId;
+        row.title = "Title " + sourceId;
+        row.accountName = accountName;
+        row.accountType = accountType;
+        groups.add(row);
+        return this;
+    }
+
+    FakeContactsDataSource rawContact(int rawContactId, int contactId, String accountName) {
+        return rawContact(rawContactId, contactId, accountName, GOOGLE);
+    }
+
+    FakeContactsDataSource rawContact(int rawContactId, int contactId, String accountName, String accountType) {
+        rawContacts.add(new int[]{rawContactId, contactId});
+        accountByRaw.put(rawContactId, new String[]{accountName, accountType});
+        return this;
+    }
+
+    FakeContactsDataSource membership(int rawContactId, int labelId) {
+        for (int[] rawContact : rawContacts) {
+            if (rawContact[0] == rawContactId) {
+                memberships.add(new int[]{rawContactId, rawContact[1], labelId});
+                return this;
+            }
+        }
+        throw new IllegalArgumentException("unknown rawContact " + rawContactId);
+    }
+
+    @Override
+    public void readGroups(String[] sourceIds, GroupVisitor visitor) {
+        for (LabelRow group : groups) {
+            if (sourceIds == null || contains(sourceIds, group.sourceId)) {
+                //Visitor owns the row, so every read gets a copy
+                LabelRow row = new LabelRow();
+                row.labelId = group.labelId;
+                row.sourceId = group.sourceId;
+                row.title = group.title;
+                row.accountName = group.accountName;
+                row.accountType = group.accountType;
+                visitor.visit(row);
+            }
+        }
+    }
+
+    @Override
+    public void readRawContacts(int[] contactIds, RawContactVisitor visitor) {
+        for (int[] rawContact : rawContacts) {
+            if (contains(contactIds, rawContact[1])) {
+                String[] account = accountByRaw.get(rawContact[0]);
+                visitor.visit(rawContact[0], rawContact[1], account[0], account[1]);
+            }
+        }
+    }
+
+    @Override
+    public void readMembershipsByLabel(int[] labelIds, MembershipVisitor visitor) {
+        for (int[] membership : memberships) {
+            if (labelIds == null || contains(labelIds, membership[2])) {
+                visitor.visit(membership[0], membership[1], membership[2]);
+            }
+        }
+    }
+
+    @Override
+    public void readMembershipsByRawContact(int[] rawContactIds, MembershipVisitor visitor) {
+        for (int[] membership : memberships) {
+            if (contains(rawContactIds, membership[0])) {
+                visitor.visit(membership[0], membership[1], membership[2]);
+            }
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int candidate : values) {
+            if (candidate == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String candidate : values) {
+            if (candidate != null && candidate.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package com.qbix.qbixcontactgroupcore;
+
+import com.qbix.qbixcontactgroupcore.collections.IntBitmap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LabelQueryTest {
+
+    private final LabelQuery.Members members = new LabelQuery.Members() {
+        private final HashMap<String, IntBitmap> bitmaps = new HashMap<>();
+
+        {
+            bitmaps.put("a", IntBitmap.of(new int[]{1, 2, 3, 4, 5}));
+            bitmaps.put("b", IntBitmap.of(new int[]{4, 5, 6, 7}));
+            bitmaps.put("c", IntBitmap.of(new int[]{5, 7, 9}));
+        }
+
+        @Override
+        public IntBitmap get(String sourceId) {
+            IntBitmap bitmap = bitmaps.get(sourceId);
+            return bitmap == null ? IntBitmap.EMPTY : bitmap;
+        }
+    };
+
+    @Test
+    public void label() {
+        assertArrayEquals(new int[]{5, 7, 9}, LabelQuery.label("c").evaluate(members).toArray());
+        assertEquals(0, LabelQuery.label("missing").evaluate(members).cardinality());
+    }
+
+    @Test
+    public void union() {
+        LabelQuery query = LabelQuery.of(LabelQuery.Operator.UNION, queries(label("a"), label("c"), label("missing")));
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 7, 9}, query.evaluate(members).toArray());
+    }
+
+    @Test
+    public void intersection() {
+        LabelQuery query = LabelQuery.of(LabelQuery.Operator.INTERSECTION, queries(label("a"), label("b")));
+
+        assertArrayEquals(new int[]{4, 5}, query.evaluate(members).toArray());
+    }
+
+    @Test
+    public void differenceRemovesMembersOfEveryOtherOperand() {
+        LabelQuery query = LabelQuery.of(LabelQuery.Operator.DIFFERENCE, queries(label("a"), label("b"), label("c")));
+
+        assertArrayEquals(new int[]{1, 2, 3}, query.evaluate(members).toArray());
+    }
+
+    @Test
+    public void nestedExpression() {
+        //In a and b but not in c
+        LabelQuery query = LabelQuery.of(LabelQuery.Operator.DIFFERENCE, queries(
+                LabelQuery.of(LabelQuery.Operator.INTERSECTION, queries(label("a"), label("b"))),
+                label("c")));
+
+        assertArrayEquals(new int[]{4}, query.evaluate(members).toArray());
+        assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(query.getSourceIds()));
+    }
+
+    @Test
+    public void unionAndIntersectionOfNothingAreEmpty() {
+        List<LabelQuery> none = new ArrayList<>();
+
+        assertEquals(0, LabelQuery.of(LabelQuery.Operator.UNION, none).evaluate(members).cardinality());
+        assertEquals(0, LabelQuery.of(LabelQuery.Operator.INTERSECTION, none).evaluate(members).cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differenceNeedsOperand() {
+        LabelQuery.of(LabelQuery.Operator.DIFFERENCE, new ArrayList<LabelQuery>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void labelNeedsSourceId() {
+        LabelQuery.of(LabelQuery.Operator.LABEL, queries(label("a")));
+    }
+
+    private static LabelQuery label(String sourceId) {
+        return LabelQuery.label(sourceId);
+    }
+
+    private static List<LabelQuery> queries(LabelQuery... queries) {
+        return new ArrayList<>(Arrays.asList(queries));
+    }
+}
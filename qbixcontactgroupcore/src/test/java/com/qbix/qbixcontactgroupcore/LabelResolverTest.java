@@ -0,0 +1,279 @@
+package com.qbix.qbixcontactgroupcore;
+
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LabelResolverTest {
+
+    private static final String FIRST = "first@example.com";
+    private static final String SECOND = "second@example.com";
+    private static final String THIRD = "third@example.com";
+
+    @Test
+    public void resolveAll_mergesGroupsOfAllAccountsBySourceId() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "family", FIRST)
+                .group(3, "friends", SECOND)
+                .rawContact(100, 10, FIRST)
+                .rawContact(200, 20, SECOND)
+                .membership(100, 1)
+                .membership(200, 3);
+
+        LabelResolution resolution = LabelResolver.resolveAll(dataSource);
+
+        assertEquals(3, resolution.rows.size());
+        assertEquals(2, resolution.labels.size());
+        LabelRow friends = resolution.labels.get(0);
+        assertEquals(1, friends.labelId);
+        assertEquals("family", resolution.labels.get(1).sourceId);
+        assertArrayEquals(new int[]{10, 20}, friends.contactIds.toArray());
+        //Row of the second account carries members of the whole label
+        assertSame(friends.contactIds, resolution.rows.get(2).contactIds);
+        assertEquals(0, resolution.labels.get(1).contactIds.size());
+    }
+
+    @Test
+    public void resolveAll_keepsGroupsWithoutSourceIdSeparate() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, null, FIRST)
+                .group(2, "friends", FIRST)
+                .group(3, null, SECOND)
+                .rawContact(100, 10, FIRST)
+                .rawContact(200, 20, SECOND)
+                .membership(100, 1)
+                .membership(200, 3);
+
+        LabelResolution resolution = LabelResolver.resolveAll(dataSource);
+
+        assertEquals(3, resolution.labels.size());
+        assertEquals(1, resolution.labels.get(0).labelId);
+        assertEquals(2, resolution.labels.get(1).labelId);
+        assertEquals(3, resolution.labels.get(2).labelId);
+        assertArrayEquals(new int[]{10}, resolution.labels.get(0).contactIds.toArray());
+        assertArrayEquals(new int[]{20}, resolution.labels.get(2).contactIds.toArray());
+    }
+
+    @Test
+    public void resolveAll_keepsContactOncePerLabel() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "friends", SECOND)
+                .group(3, "family", FIRST)
+                //Contact 10 is linked from rawContacts of both accounts
+                .rawContact(100, 10, FIRST)
+                .rawContact(101, 10, SECOND)
+                .rawContact(200, 20, FIRST)
+                .membership(100, 1)
+                .membership(101, 2)
+                .membership(200, 1)
+                .membership(100, 3);
+
+        LabelResolution resolution = LabelResolver.resolveAll(dataSource);
+
+        assertArrayEquals(new int[]{10, 20}, resolution.labels.get(0).contactIds.toArray());
+        assertArrayEquals(new int[]{10}, resolution.labels.get(1).contactIds.toArray());
+    }
+
+    @Test
+    public void resolveBySourceId_returnsRowOfFirstAvailableAccount() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", THIRD)
+                .group(2, "friends", SECOND)
+                .group(3, "friends", FIRST)
+                .group(4, "family", FIRST)
+                .rawContact(100, 10, THIRD)
+                .rawContact(200, 20, FIRST)
+                .membership(100, 1)
+                .membership(200, 3);
+
+        List<LabelRow> labels = LabelResolver.resolveBySourceId(dataSource,
+                new String[]{"family", "missing", "friends"}, accounts(FIRST, SECOND));
+
+        assertEquals(2, labels.size());
+        assertEquals("family", labels.get(0).sourceId);
+        assertEquals(4, labels.get(0).labelId);
+        //Third account is gone, so its row is skipped, but its members are kept
+        assertEquals(2, labels.get(1).labelId);
+        assertEquals(SECOND, labels.get(1).accountName);
+        assertArrayEquals(new int[]{10, 20}, labels.get(1).contactIds.toArray());
+    }
+
+    @Test
+    public void summaryCountIsCountOfOwnGroupMembersOnBothPaths() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "friends", SECOND)
+                .rawContact(100, 10, FIRST)
+                .rawContact(101, 10, FIRST)
+                .rawContact(200, 20, SECOND)
+                .rawContact(300, 30, FIRST)
+                //Two rawContacts of contact 10 are counted once
+                .membership(100, 1)
+                .membership(101, 1)
+                .membership(300, 1)
+                .membership(200, 2);
+
+        LabelResolution resolution = LabelResolver.resolveAll(dataSource);
+        List<LabelRow> labels = LabelResolver.resolveBySourceId(dataSource,
+                new String[]{"friends"}, accounts(FIRST, SECOND));
+
+        assertEquals(2, resolution.rows.get(0).summaryCount);
+        assertEquals(1, resolution.rows.get(1).summaryCount);
+        assertEquals(2, labels.get(0).summaryCount);
+        assertEquals(3, labels.get(0).contactIds.size());
+    }
+
+    @Test
+    public void resolveBySourceId_skipsLabelWithoutAvailableAccount() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", THIRD);
+
+        List<LabelRow> labels = LabelResolver.resolveBySourceId(dataSource,
+                new String[]{"friends"}, accounts(FIRST));
+
+        assertTrue(labels.isEmpty());
+    }
+
+    @Test
+    public void planUpdates_addsLabelOfEveryRawContactsOwnAccount() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "friends", SECOND)
+                .rawContact(100, 10, FIRST)
+                .rawContact(101, 10, SECOND)
+                //No group of the label in third account, so this rawContact is skipped
+                .rawContact(102, 10, THIRD);
+
+        MembershipChanges changes = LabelResolver.planUpdates(dataSource,
+                operations(new LabelOperation(true, "friends", new String[]{"10"})));
+
+        assertEquals(2, changes.inserts.size());
+        assertTrue(changes.inserts.contains(Memberships.pack(100, 1)));
+        assertTrue(changes.inserts.contains(Memberships.pack(101, 2)));
+        assertTrue(changes.deletesByLabelId.isEmpty());
+    }
+
+    @Test
+    public void planUpdates_tellsApartAccountsWithTheSameNameByType() {
+        String exchange = "com.android.exchange";
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "friends", FIRST, exchange)
+                .rawContact(100, 10, FIRST, exchange)
+                .rawContact(101, 10, FIRST)
+                .rawContact(200, 20, FIRST, exchange)
+                .membership(200, 2);
+
+        MembershipChanges added = LabelResolver.planUpdates(dataSource,
+                operations(new LabelOperation(true, "friends", new String[]{"10"})));
+        MembershipChanges removed = LabelResolver.planUpdates(dataSource,
+                operations(new LabelOperation(false, "friends", new String[]{"20"})));
+
+        assertEquals(2, added.inserts.size());
+        assertTrue(added.inserts.contains(Memberships.pack(100, 2)));
+        assertTrue(added.inserts.contains(Memberships.pack(101, 1)));
+        assertEquals(set(200), set(removed.deletesByLabelId.get(2)));
+        assertFalse(removed.deletesByLabelId.containsKey(1));
+    }
+
+    @Test
+    public void planUpdates_skipsExistingMembershipsAndGroupsDeletesByLabel() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "friends", SECOND)
+                .rawContact(100, 10, FIRST)
+                .rawContact(101, 10, SECOND)
+                .rawContact(200, 20, FIRST)
+                .membership(100, 1)
+                .membership(200, 1);
+
+        MembershipChanges added = LabelResolver.planUpdates(dataSource,
+                operations(new LabelOperation(true, "friends", new String[]{"10", "20"})));
+        MembershipChanges removed = LabelResolver.planUpdates(dataSource,
+                operations(new LabelOperation(false, "friends", new String[]{"10", "20", "not a number"})));
+
+        assertEquals(1, added.inserts.size());
+        assertTrue(added.inserts.contains(Memberships.pack(101, 2)));
+        assertEquals(0, removed.inserts.size());
+        assertEquals(1, removed.deletesByLabelId.size());
+        assertEquals(set(100, 200), set(removed.deletesByLabelId.get(1)));
+    }
+
+    @Test
+    public void planUpdates_removeAfterAddCancelsInsert() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .rawContact(100, 10, FIRST);
+
+        MembershipChanges changes = LabelResolver.planUpdates(dataSource, operations(
+                new LabelOperation(true, "friends", new String[]{"10"}),
+                new LabelOperation(false, "friends", new String[]{"10"})));
+
+        assertEquals(0, changes.inserts.size());
+        assertTrue(changes.deletesByLabelId.isEmpty());
+    }
+
+    @Test
+    public void planUpdates_addAfterRemoveCancelsDelete() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .group(1, "friends", FIRST)
+                .group(2, "family", FIRST)
+                .rawContact(100, 10, FIRST)
+                .membership(100, 1);
+
+        MembershipChanges changes = LabelResolver.planUpdates(dataSource, operations(
+                new LabelOperation(false, "friends", new String[]{"10"}),
+                new LabelOperation(true, "family", new String[]{"10"}),
+                new LabelOperation(true, "friends", new String[]{"10"})));
+
+        assertEquals(1, changes.inserts.size());
+        assertTrue(changes.inserts.contains(Memberships.pack(100, 2)));
+        assertFalse(changes.deletesByLabelId.containsKey(1));
+    }
+
+    @Test
+    public void planUpdates_ignoresUnknownLabel() {
+        FakeContactsDataSource dataSource = new FakeContactsDataSource()
+                .rawContact(100, 10, FIRST);
+
+        MembershipChanges changes = LabelResolver.planUpdates(dataSource,
+                operations(new LabelOperation(true, "missing", new String[]{"10"})));
+
+        assertEquals(0, changes.inserts.size());
+        assertTrue(changes.deletesByLabelId.isEmpty());
+    }
+
+    private static List<LabelOperation> operations(LabelOperation... operations) {
+        return new ArrayList<>(Arrays.asList(operations));
+    }
+
+    private static Set<String> accounts(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<Integer> set(int... values) {
+        Set<Integer> set = new HashSet<>();
+        for (int value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    private static Set<Integer> set(IntArrayList values) {
+        return set(values.toArray());
+    }
+}
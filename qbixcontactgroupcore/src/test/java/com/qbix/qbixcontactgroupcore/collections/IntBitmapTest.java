@@ -0,0 +1,257 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link IntBitmap} with {@link TreeSet} of the same values, and checks that every
+ * container has its smallest form. Values are generated so that every container form (array,
+ * bitmap, runs) and every switch between them is hit.
+ */
+public class IntBitmapTest {
+
+    private static final int CONTAINER_SIZE = 1 << 16;
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    @Test
+    public void emptyBitmap() {
+        IntBitmap bitmap = IntBitmap.of(new int[0]);
+
+        assertSame(IntBitmap.EMPTY, bitmap);
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.toArray().length);
+        assertFalse(bitmap.contains(0));
+    }
+
+    @Test
+    public void duplicatesAreKeptOnce() {
+        IntBitmap bitmap = IntBitmap.of(new int[]{5, 3, 5, 3, 3});
+
+        assertArrayEquals(new int[]{3, 5}, bitmap.toArray());
+        assertEquals(2, bitmap.cardinality());
+    }
+
+    @Test
+    public void valuesAreInUnsignedOrder() {
+        int[] values = {-1, Integer.MIN_VALUE, 0, Integer.MAX_VALUE, 1, -CONTAINER_SIZE};
+
+        assertArrayEquals(new int[]{0, 1, Integer.MAX_VALUE, Integer.MIN_VALUE, -CONTAINER_SIZE, -1},
+                IntBitmap.of(values).toArray());
+    }
+
+    @Test
+    public void arrayToBitmapEdge() {
+        //Every second value, so there are no runs and only cardinality picks the form
+        for (int cardinality = MAX_ARRAY_CARDINALITY - 1; cardinality <= MAX_ARRAY_CARDINALITY + 1; cardinality++) {
+            int[] values = new int[cardinality];
+            for (int i = 0; i < cardinality; i++) {
+                values[i] = 3 * CONTAINER_SIZE + i * 2;
+            }
+            check(values);
+        }
+    }
+
+    @Test
+    public void runsAcrossContainerBoundaries() {
+        int[] values = new int[3 * CONTAINER_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = CONTAINER_SIZE / 2 + i;
+        }
+        check(values);
+        //Full containers and runs which end at the last value of a container
+        check(range(0, 2 * CONTAINER_SIZE));
+        check(range(CONTAINER_SIZE - 64, CONTAINER_SIZE));
+        check(range(-70000, 70000));
+    }
+
+    @Test
+    public void runsCrossingWordBoundariesKeepRunFormAfterOperation() {
+        //Runs of 30 values every 44, so about half of them cross a 64-bit word of bitmap
+        int[] values = new int[CONTAINER_SIZE];
+        int count = 0;
+        for (int start = 0; start + 30 <= CONTAINER_SIZE; start += 44) {
+            for (int i = 0; i < 30; i++) {
+                values[count++] = start + i;
+            }
+        }
+        int[] runs = Arrays.copyOf(values, count);
+        IntBitmap bitmap = check(runs);
+
+        //Intersection with a full container is computed over bitmap words
+        assertMatches(toSet(runs), bitmap.and(IntBitmap.of(range(0, CONTAINER_SIZE))));
+        assertMatches(toSet(runs), bitmap.or(IntBitmap.of(new int[]{1, 2})));
+    }
+
+    @Test
+    public void operationsDoNotChangeOperands() {
+        IntBitmap a = IntBitmap.of(range(0, 5000));
+        IntBitmap b = IntBitmap.of(range(2500, 7500));
+        int[] aValues = a.toArray();
+        int[] bValues = b.toArray();
+
+        a.and(b);
+        a.or(b);
+        a.andNot(b);
+        b.andNot(a);
+
+        assertArrayEquals(aValues, a.toArray());
+        assertArrayEquals(bValues, b.toArray());
+    }
+
+    @Test
+    public void randomBitmapsMatchTreeSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 300; round++) {
+            int[] a = randomValues(random);
+            int[] b = randomValues(random);
+            IntBitmap bitmapA = check(a);
+            IntBitmap bitmapB = check(b);
+            TreeSet<Long> setA = toSet(a);
+            TreeSet<Long> setB = toSet(b);
+
+            TreeSet<Long> union = new TreeSet<>(setA);
+            union.addAll(setB);
+            TreeSet<Long> intersection = new TreeSet<>(setA);
+            intersection.retainAll(setB);
+            TreeSet<Long> difference = new TreeSet<>(setA);
+            difference.removeAll(setB);
+
+            assertMatches(union, bitmapA.or(bitmapB));
+            assertMatches(union, bitmapB.or(bitmapA));
+            assertMatches(intersection, bitmapA.and(bitmapB));
+            assertMatches(intersection, bitmapB.and(bitmapA));
+            assertMatches(difference, bitmapA.andNot(bitmapB));
+            //Results of operations are operands too
+            assertMatches(setA, bitmapA.or(bitmapB).andNot(bitmapB).or(bitmapA.and(bitmapB)));
+            assertMatches(new TreeSet<Long>(), bitmapA.andNot(bitmapA));
+        }
+    }
+
+    /**
+     * Builds bitmap of values and checks it against {@link TreeSet}.
+     */
+    private static IntBitmap check(int[] values) {
+        IntBitmap bitmap = IntBitmap.of(values);
+        assertMatches(toSet(values), bitmap);
+        return bitmap;
+    }
+
+    private static void assertMatches(TreeSet<Long> expected, IntBitmap bitmap) {
+        assertEquals(smallestSize(expected), bitmap.sizeInBytes());
+        int[] values = bitmap.toArray();
+        assertEquals(expected.size(), values.length);
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+        int i = 0;
+        for (long value : expected) {
+            assertEquals(value, values[i++] & 0xFFFFFFFFL);
+        }
+        //Members and their neighbours, which are often in the same container
+        for (int j = 0; j < values.length; j += 1 + values.length / 500) {
+            assertTrue(bitmap.contains(values[j]));
+            assertEquals(expected.contains((values[j] + 1) & 0xFFFFFFFFL), bitmap.contains(values[j] + 1));
+            assertEquals(expected.contains((values[j] - 1) & 0xFFFFFFFFL), bitmap.contains(values[j] - 1));
+        }
+    }
+
+    /**
+     * @return size of values when every container has its smallest form
+     */
+    private static int smallestSize(TreeSet<Long> values) {
+        int bytes = 0;
+        long key = -1;
+        int cardinality = 0;
+        int runs = 0;
+        long previous = -2;
+        for (long value : values) {
+            if (value >>> 16 != key) {
+                bytes += containerSize(cardinality, runs);
+                key = value >>> 16;
+                cardinality = 0;
+                runs = 0;
+            }
+            if (cardinality == 0 || value != previous + 1) {
+                runs++;
+            }
+            cardinality++;
+            previous = value;
+        }
+        return bytes + containerSize(cardinality, runs);
+    }
+
+    private static int containerSize(int cardinality, int runs) {
+        if (cardinality == 0) {
+            return 0;
+        }
+        int bytes = Math.min(runs * 4, 8192);
+        return cardinality <= MAX_ARRAY_CARDINALITY ? Math.min(bytes, cardinality * 2) : bytes;
+    }
+
+    private static int[] randomValues(Random random) {
+        int base = random.nextInt(8) * CONTAINER_SIZE - 2 * CONTAINER_SIZE + random.nextInt(CONTAINER_SIZE);
+        int count = random.nextInt(3) == 0 ? random.nextInt(20) : random.nextInt(3 * MAX_ARRAY_CARDINALITY);
+        int[] values = new int[count];
+        switch (random.nextInt(5)) {
+            case 0:
+                //Sparse, mostly array containers
+                for (int i = 0; i < count; i++) {
+                    values[i] = base + random.nextInt(4 * CONTAINER_SIZE);
+                }
+                break;
+            case 1:
+                //Dense, bitmap containers
+                for (int i = 0; i < count; i++) {
+                    values[i] = base + random.nextInt(count + 1);
+                }
+                break;
+            case 2:
+                //Consecutive ids, run containers
+                for (int i = 0; i < count; i++) {
+                    values[i] = base + i;
+                }
+                break;
+            case 3:
+                //Short runs with gaps
+                int value = base;
+                for (int i = 0; i < count; i++) {
+                    value += random.nextInt(8) == 0 ? 2 + random.nextInt(5) : 1;
+                    values[i] = value;
+                }
+                break;
+            default:
+                //Any int, including negative ones
+                for (int i = 0; i < count; i++) {
+                    values[i] = random.nextBoolean() ? random.nextInt() : base + random.nextInt(100);
+                }
+        }
+        return values;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] values = new int[to - from];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i;
+        }
+        return values;
+    }
+
+    /**
+     * @return values as unsigned longs, so set order is the bitmap order
+     */
+    private static TreeSet<Long> toSet(int[] values) {
+        TreeSet<Long> set = new TreeSet<>();
+        for (int value : values) {
+            set.add(value & 0xFFFFFFFFL);
+        }
+        return set;
+    }
+}
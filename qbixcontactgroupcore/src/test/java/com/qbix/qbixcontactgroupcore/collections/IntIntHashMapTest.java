@@ -0,0 +1,99 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntIntHashMapTest {
+
+    @Test
+    public void putReplacesValueAndZeroKeyIsSupported() {
+        IntIntHashMap map = new IntIntHashMap();
+        map.put(0, 5);
+        map.put(7, 1);
+        map.put(7, 2);
+
+        assertEquals(2, map.size());
+        assertEquals(5, map.get(0, -1));
+        assertEquals(2, map.get(7, -1));
+        assertEquals(-1, map.get(8, -1));
+        assertTrue(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removeKeepsEveryOtherKeyOfProbeChainReachable() {
+        //Keys with the same home slot in 16-slot table form one probe chain
+        int[] keys = collidingKeys(6, 16);
+        IntIntHashMap map = new IntIntHashMap(4);
+        for (int key : keys) {
+            map.put(key, key * 10);
+        }
+        for (int i = 0; i < keys.length; i += 2) {
+            assertTrue(map.remove(keys[i]));
+            assertFalse(map.remove(keys[i]));
+        }
+
+        assertEquals(3, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i % 2 == 1 ? keys[i] * 10 : -1, map.get(keys[i], -1));
+        }
+    }
+
+    /**
+     * @return count positive keys which have the same home slot in table of given capacity
+     */
+    static int[] collidingKeys(int count, int capacity) {
+        int[] keys = new int[count];
+        int home = IntIntHashMap.mix(1) & (capacity - 1);
+        int found = 0;
+        for (int key = 1; found < count; key++) {
+            if ((IntIntHashMap.mix(key) & (capacity - 1)) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            IntIntHashMap map = new IntIntHashMap(random.nextInt(64));
+            HashMap<Integer, Integer> expected = new HashMap<>();
+            //Small key range, so removes hit present keys and chains are dense
+            int keyRange = 1 + random.nextInt(200);
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(keyRange) - keyRange / 4;
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+                } else {
+                    int value = random.nextInt();
+                    expected.put(key, value);
+                    map.put(key, value);
+                }
+            }
+            assertEquals(expected.size(), map.size());
+            for (int key = -keyRange; key < keyRange; key++) {
+                Integer value = expected.get(key);
+                assertEquals(value != null, map.containsKey(key));
+                assertEquals(value == null ? Integer.MIN_VALUE : value, map.get(key, Integer.MIN_VALUE));
+            }
+            final Map<Integer, Integer> visited = new HashMap<>();
+            map.forEach(new IntIntHashMap.Visitor() {
+                @Override
+                public void visit(int key, int value) {
+                    visited.put(key, value);
+                }
+            });
+            assertEquals(expected, visited);
+        }
+    }
+}
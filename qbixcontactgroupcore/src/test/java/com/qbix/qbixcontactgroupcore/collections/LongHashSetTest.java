@@ -0,0 +1,76 @@
+package com.qbix.qbixcontactgroupcore.collections;
+
+import com.qbix.qbixcontactgroupcore.Memberships;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void zeroValueIsSupported() {
+        LongHashSet set = new LongHashSet();
+
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertTrue(set.remove(0L));
+        assertFalse(set.remove(0L));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    public void removeKeepsEveryOtherValueOfProbeChainReachable() {
+        //Values below 2^32 are hashed like int keys, so these share one probe chain
+        int[] values = IntIntHashMapTest.collidingKeys(6, 16);
+        LongHashSet set = new LongHashSet(4);
+        for (int value : values) {
+            set.add(value);
+        }
+        for (int i = 0; i < values.length; i += 2) {
+            assertTrue(set.remove(values[i]));
+        }
+
+        assertEquals(3, set.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(i % 2 == 1, set.contains(values[i]));
+        }
+    }
+
+    @Test
+    public void randomOperationsMatchHashSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            LongHashSet set = new LongHashSet(random.nextInt(64));
+            HashSet<Long> expected = new HashSet<>();
+            int rawIdRange = 1 + random.nextInt(100);
+            for (int i = 0; i < 5000; i++) {
+                long value = Memberships.pack(random.nextInt(rawIdRange), random.nextInt(3) - 1);
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(value), set.remove(value));
+                } else {
+                    assertEquals(expected.add(value), set.add(value));
+                }
+            }
+            assertEquals(expected.size(), set.size());
+            for (long value : expected) {
+                assertTrue(set.contains(value));
+            }
+            final Set<Long> visited = new HashSet<>();
+            set.forEach(new LongHashSet.Visitor() {
+                @Override
+                public void visit(long value) {
+                    visited.add(value);
+                }
+            });
+            assertEquals(expected, visited);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.qbix.qbixcontactgrouplib;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.OnAccountsUpdateListener;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SyncStatusObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache of device accounts: names, types and Contacts syncability, indexed by name.
+ * Accounts are read from {@link AccountManager} on first use and again only after it reports
+ * accounts change or sync settings change, so requests do not repeat these binder calls.
+ */
+class AccountRegistry {
+
+    private static AccountRegistry instance;
+
+    private final Context context;
+    private final Object loadLock = new Object();
+    //Incremented on every change, so a state read before the change is not kept
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile State state;
+
+    /**
+     * Gets registry of the process, creating it on first call.
+     *
+     * @param context Any context of the application
+     * @return account registry
+     */
+    static synchronized AccountRegistry get(Context context) {
+        if (instance == null) {
+            instance = new AccountRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AccountRegistry(Context context) {
+        this.context = context;
+        AccountManager.get(context).addOnAccountsUpdatedListener(new OnAccountsUpdateListener() {
+            @Override
+            public void onAccountsUpdated(Account[] accounts) {
+                invalidate();
+            }
+        }, new Handler(Looper.getMainLooper()), false);
+        ContentResolver.addStatusChangeListener(ContentResolver.SYNC_OBSERVER_TYPE_SETTINGS, new SyncStatusObserver() {
+            @Override
+            public void onStatusChanged(int which) {
+                invalidate();
+            }
+        });
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        state = null;
+    }
+
+    /**
+     * @return names of all accounts on the device
+     */
+    Set<String> getAccountNames() {
+        return getState().names;
+    }
+
+    /**
+     * @param name Name of account
+     * @return accounts with given name (of any type), empty if there is none
+     */
+    List<Account> getAccounts(String name) {
+        List<Account> accounts = getState().accountsByName.get(name);
+        return accounts == null ? Collections.<Account>emptyList() : accounts;
+    }
+
+    /**
+     * @return all accounts which Contacts can be synced
+     */
+    List<Account> getSyncableAccounts() {
+        return new ArrayList<>(getState().syncable);
+    }
+
+    /**
+     * @param account Account to check
+     * @return true if Contacts of the account can be synced
+     */
+    boolean isSyncable(Account account) {
+        return getState().syncable.contains(account);
+    }
+
+    private State getState() {
+        State current = state;
+        if (current != null) {
+            return current;
+        }
+        synchronized (loadLock) {
+            current = state;
+            if (current == null) {
+                int loadGeneration = generation.get();
+                current = new State(AccountManager.get(context).getAccounts());
+                if (generation.get() == loadGeneration) {
+                    state = current;
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Accounts read at one moment, never changed after creation.
+     */
+    private static class State {
+        final HashMap<String, List<Account>> accountsByName = new HashMap<>();
+        final Set<Account> syncable = new LinkedHashSet<>();
+        final Set<String> names = Collections.unmodifiableSet(accountsByName.keySet());
+
+        State(Account[] accounts) {
+            for (Account account : accounts) {
+                List<Account> named = accountsByName.get(account.name);
+                if (named == null) {
+                    named = new ArrayList<>(1);
+                    accountsByName.put(account.name, named);
+                }
+                named.add(account);
+                if (ContentResolver.getIsSyncable(account, ContactsContract.AUTHORITY) > 0) {
+                    syncable.add(account);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.qbix.qbixcontactgrouplib;
+
+import com.qbix.qbixcontactgrouplib.models.QbixGroup;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes labels as multipart plugin result, so member ids are not boxed into JSONArray and
+ * parsed back by WebView. First part is JSON header with label metadata, second part is
+ * ArrayBuffer with contactIds of all labels as little-endian 32-bit integers.
+ * <p>
+ * Ids of every label are sorted and delta-encoded: first int is the smallest id, every next int is
+ * the difference with previous id. Header has "offset" (in ints) and "contactCount" of every label,
+ * so JS side restores ids with prefix sum over Int32Array(buffer, offset * 4, contactCount).
+ */
+class BinaryLabelEncoder {
+
+    static final String ENCODING = "binary";
+    private static final String FORMAT = "int32le-delta";
+
+    /**
+     * @param labels Labels that must be encoded
+     * @param header Object which gets "format" and "labels" fields and is sent as the first part
+     *               (can already have other fields, e.g. page index)
+     * @return multipart result: [header, ArrayBuffer of contactIds]
+     * @throws JSONException if header can't be built
+     */
+    static PluginResult encode(List<QbixGroup> labels, JSONObject header) throws JSONException {
+        int total = 0;
+        for (QbixGroup label : labels) {
+            total += label.contactIds.size();
+        }
+        byte[] buffer = new byte[total * 4];
+        JSONArray jsonLabels = new JSONArray();
+        int offset = 0;
+        for (QbixGroup label : labels) {
+            int[] ids = label.contactIds.toArray();
+            Arrays.sort(ids);
+            int previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int value = ids[i] - previous;
+                previous = ids[i];
+                int position = (offset + i) << 2;
+                buffer[position] = (byte) value;
+                buffer[position + 1] = (byte) (value >>> 8);
+                buffer[position + 2] = (byte) (value >>> 16);
+                buffer[position + 3] = (byte) (value >>> 24);
+            }
+            JSONObject jsonLabel = label.toJson(false);
+            jsonLabel.put("offset", offset);
+            jsonLabel.put("contactCount", ids.length);
+            jsonLabels.put(jsonLabel);
+            offset += ids.length;
+        }
+        header.put("format", FORMAT);
+        header.put("labels", jsonLabels);
+        List<PluginResult> parts = new ArrayList<>(2);
+        parts.add(new PluginResult(PluginResult.Status.OK, header));
+        parts.add(new PluginResult(PluginResult.Status.OK, buffer));
+        return new PluginResult(PluginResult.Status.OK, parts);
+    }
+}
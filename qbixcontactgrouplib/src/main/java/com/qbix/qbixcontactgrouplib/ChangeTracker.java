@@ -0,0 +1,410 @@
+package com.qbix.qbixcontactgrouplib;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+import com.qbix.qbixcontactgroupcore.collections.IntHashSet;
+import com.qbix.qbixcontactgroupcore.collections.IntIntHashMap;
+import com.qbix.qbixcontactgrouplib.models.AccNameGroup;
+import com.qbix.qbixcontactgrouplib.utils.Metrics;
+import com.qbix.qbixcontactgrouplib.utils.QueryPlanner;
+import com.qbix.qbixcontactgrouplib.utils.RawContactIndex;
+
+import org.apache.cordova.CordovaInterface;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Computes label and membership changes since the state identified by a version token.
+ * <p>
+ * Every call reads only version columns of Groups table, rawContact versions come from
+ * {@link RawContactIndex}, which is refreshed only for changed contacts. GroupMembership
+ * rows are read again only for rawContacts which {@link ContactsContract.RawContacts#VERSION}
+ * changed (the provider bumps it on every change of raw contact's data rows), so the cost of
+ * a call depends on the count of changes and not on the count of memberships.
+ * <p>
+ * States of last {@link #MAX_STATES} tokens are kept in memory. Unknown tokens (e.g. after
+ * process restart) get full result with "reset" flag set.
+ */
+class ChangeTracker {
+
+    private static final int MAX_STATES = 4;
+
+    private final CordovaInterface app;
+    private final RawContactIndex rawContactIndex;
+    private final String instanceId = Long.toHexString(new Random().nextLong());
+    private int tokenCounter;
+    private final LinkedHashMap<String, VersionState> states =
+            new LinkedHashMap<String, VersionState>(MAX_STATES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, VersionState> eldest) {
+                    return size() > MAX_STATES;
+                }
+            };
+
+    /**
+     * Provider state at the moment token was issued. Never modified after it is stored.
+     */
+    private static class VersionState {
+        //key - label id, value - group row (in provider order)
+        final LinkedHashMap<Integer, AccNameGroup> groups = new LinkedHashMap<>();
+        final IntIntHashMap groupVersions = new IntIntHashMap();
+        final IntIntHashMap rawVersions = new IntIntHashMap();
+        final IntIntHashMap rawContactIds = new IntIntHashMap();
+        //key - rawContactId, value - label ids (only rawContacts with memberships)
+        final HashMap<Integer, IntArrayList> rawLabelIds = new HashMap<>();
+    }
+
+    ChangeTracker(CordovaInterface app) {
+        this.app = app;
+        this.rawContactIndex = RawContactIndex.get(app.getActivity());
+    }
+
+    /**
+     * Gets changes since given token.
+     *
+     * @param token Token returned by previous call or null for full result
+     * @return JSONObject with new "token", "reset" flag, changed/removed "groups"
+     * (by sourceId) and changed/removed "contacts" (contactId with its sourceIds)
+     * @throws JSONException if result can't be built
+     */
+    synchronized JSONObject getChanges(String token) throws JSONException {
+        ContentResolver resolver = app.getActivity().getContentResolver();
+        VersionState previous = token == null ? null : states.get(token);
+        VersionState current = new VersionState();
+        readGroups(resolver, current);
+        IntArrayList changedRawIds = readRawContacts(current, previous);
+        if (previous == null) {
+            readMemberships(resolver, current, null);
+        } else {
+            IntHashSet changed = new IntHashSet(changedRawIds.size());
+            for (int i = 0; i < changedRawIds.size(); i++) {
+                changed.add(changedRawIds.get(i));
+            }
+            for (Map.Entry<Integer, IntArrayList> entry : previous.rawLabelIds.entrySet()) {
+                int rawId = entry.getKey();
+                if (!changed.contains(rawId) && current.rawVersions.containsKey(rawId)) {
+                    current.rawLabelIds.put(rawId, entry.getValue());
+                }
+            }
+            if (!changedRawIds.isEmpty()) {
+                readMemberships(resolver, current, toStringArray(changedRawIds));
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        String newToken = instanceId + "-" + (++tokenCounter);
+        states.put(newToken, current);
+        result.put("token", newToken);
+        result.put("reset", previous == null);
+        if (previous == null) {
+            result.put("groups", getAllGroups(current));
+            result.put("contacts", getAllContacts(current));
+        } else {
+            result.put("groups", getGroupChanges(previous, current));
+            result.put("contacts", getContactChanges(previous, current, changedRawIds));
+        }
+        return result;
+    }
+
+    private void readGroups(ContentResolver resolver, VersionState state) {
+        Cursor cursor = resolver.query(ContactsContract.Groups.CONTENT_URI,
+                new String[]{
+                        ContactsContract.Groups._ID,
+                        ContactsContract.Groups.VERSION,
+                        ContactsContract.Groups.SOURCE_ID,
+                        ContactsContract.Groups.TITLE,
+                        ContactsContract.Groups.ACCOUNT_NAME,
+                        ContactsContract.Groups.NOTES,
+                        ContactsContract.Groups.GROUP_VISIBLE,
+                        ContactsContract.Groups.DELETED,
+                        ContactsContract.Groups.SHOULD_SYNC,
+                        ContactsContract.Groups.GROUP_IS_READ_ONLY
+                },
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                AccNameGroup group = new AccNameGroup();
+                int labelId = cursor.getInt(0);
+                group.sourceId = cursor.getString(2);
+                group.title = cursor.getString(3);
+                group.accountName = cursor.getString(4);
+                group.notes = cursor.getString(5);
+                group.isVisible = cursor.getInt(6) == 0;
+                group.isDeleted = cursor.getInt(7) == 1;
+                group.shouldSync = cursor.getInt(8) == 1;
+                group.readOnly = cursor.getInt(9) == 1;
+                state.groups.put(labelId, group);
+                state.groupVersions.put(labelId, cursor.getInt(1));
+            }
+        } finally {
+            Metrics.recordQuery(cursor.getCount());
+            cursor.close();
+        }
+    }
+
+    /**
+     * Copies versions and contactIds of all rawContacts into current state.
+     *
+     * @return rawContactIds which are new or changed since previous state
+     */
+    private IntArrayList readRawContacts(final VersionState current, final VersionState previous) {
+        final IntArrayList changedRawIds = new IntArrayList();
+        rawContactIndex.forEach(new RawContactIndex.Visitor() {
+            @Override
+            public void visit(int rawId, int contactId, int version) {
+                current.rawContactIds.put(rawId, contactId);
+                current.rawVersions.put(rawId, version);
+                if (previous != null && (previous.rawVersions.get(rawId, -1) != version
+                        || previous.rawContactIds.get(rawId, -1) != contactId)) {
+                    changedRawIds.add(rawId);
+                }
+            }
+        });
+        return changedRawIds;
+    }
+
+    /**
+     * Reads GroupMembership rows of given rawContacts (or of all rawContacts if rawIds is null)
+     * into current state.
+     */
+    private void readMemberships(ContentResolver resolver, final VersionState current, String[] rawIds) {
+        QueryPlanner.RowHandler handler = new QueryPlanner.RowHandler() {
+            @Override
+            public void onRow(Cursor cursor) {
+                int rawId = cursor.getInt(0);
+                IntArrayList labelIds = current.rawLabelIds.get(rawId);
+                if (labelIds == null) {
+                    labelIds = new IntArrayList(2);
+                    current.rawLabelIds.put(rawId, labelIds);
+                }
+                labelIds.add(cursor.getInt(1));
+            }
+        };
+        String[] projection = new String[]{
+                ContactsContract.Data.RAW_CONTACT_ID,
+                ContactsContract.Data.DATA1
+        };
+        String selection = ContactsContract.Data.MIMETYPE + "=?";
+        String[] selectionArgs = new String[]{ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE};
+        if (rawIds != null) {
+            QueryPlanner.query(resolver, ContactsContract.Data.CONTENT_URI, projection,
+                    selection, selectionArgs,
+                    ContactsContract.Data.RAW_CONTACT_ID, rawIds, handler);
+            return;
+        }
+        QueryPlanner.readAll(resolver.query(ContactsContract.Data.CONTENT_URI, projection, selection, selectionArgs, null),
+                handler);
+    }
+
+    private JSONObject getAllGroups(VersionState current) throws JSONException {
+        JSONArray changed = new JSONArray();
+        HashSet<String> sourceIds = new HashSet<>();
+        for (AccNameGroup group : current.groups.values()) {
+            if (group.sourceId != null && sourceIds.add(group.sourceId)) {
+                changed.put(toMetadataJson(group));
+            }
+        }
+        JSONObject groups = new JSONObject();
+        groups.put("changed", changed);
+        groups.put("removed", new JSONArray());
+        return groups;
+    }
+
+    private JSONObject getGroupChanges(VersionState previous, VersionState current) throws JSONException {
+        LinkedHashSet<String> changedSourceIds = new LinkedHashSet<>();
+        HashSet<String> currentSourceIds = new HashSet<>();
+        for (Map.Entry<Integer, AccNameGroup> entry : current.groups.entrySet()) {
+            int labelId = entry.getKey();
+            AccNameGroup group = entry.getValue();
+            if (group.sourceId == null) {
+                continue;
+            }
+            currentSourceIds.add(group.sourceId);
+            AccNameGroup previousGroup = previous.groups.get(labelId);
+            if (previousGroup == null
+                    || previous.groupVersions.get(labelId, -1) != current.groupVersions.get(labelId, -1)
+                    || !group.sourceId.equals(previousGroup.sourceId)) {
+                changedSourceIds.add(group.sourceId);
+            }
+        }
+        LinkedHashSet<String> removedSourceIds = new LinkedHashSet<>();
+        for (Map.Entry<Integer, AccNameGroup> entry : previous.groups.entrySet()) {
+            String sourceId = entry.getValue().sourceId;
+            if (sourceId == null) {
+                continue;
+            }
+            if (!currentSourceIds.contains(sourceId)) {
+                removedSourceIds.add(sourceId);
+            } else if (!current.groups.containsKey(entry.getKey())) {
+                //One of accounts' rows was removed, label itself still exists
+                changedSourceIds.add(sourceId);
+            }
+        }
+        JSONArray changed = new JSONArray();
+        HashSet<String> written = new HashSet<>();
+        for (AccNameGroup group : current.groups.values()) {
+            if (group.sourceId != null && changedSourceIds.contains(group.sourceId) && written.add(group.sourceId)) {
+                changed.put(toMetadataJson(group));
+            }
+        }
+        JSONArray removed = new JSONArray();
+        for (String sourceId : removedSourceIds) {
+            removed.put(sourceId);
+        }
+        JSONObject groups = new JSONObject();
+        groups.put("changed", changed);
+        groups.put("removed", removed);
+        return groups;
+    }
+
+    private JSONObject getAllContacts(VersionState current) throws JSONException {
+        IntArrayList contactIds = new IntArrayList();
+        IntHashSet uniqueContactIds = new IntHashSet();
+        for (Integer rawId : current.rawLabelIds.keySet()) {
+            int contactId = current.rawContactIds.get(rawId, -1);
+            if (contactId != -1 && uniqueContactIds.add(contactId)) {
+                contactIds.add(contactId);
+            }
+        }
+        return getContactsJson(current, contactIds, uniqueContactIds);
+    }
+
+    private JSONObject getContactChanges(VersionState previous, final VersionState current,
+                                         IntArrayList changedRawIds) throws JSONException {
+        final IntArrayList contactIds = new IntArrayList();
+        final IntHashSet uniqueContactIds = new IntHashSet();
+        for (int i = 0; i < changedRawIds.size(); i++) {
+            int rawId = changedRawIds.get(i);
+            int previousContactId = previous.rawContactIds.get(rawId, -1);
+            if (previousContactId != -1 && uniqueContactIds.add(previousContactId)) {
+                contactIds.add(previousContactId);
+            }
+            int contactId = current.rawContactIds.get(rawId, -1);
+            if (uniqueContactIds.add(contactId)) {
+                contactIds.add(contactId);
+            }
+        }
+        //Removed rawContacts
+        previous.rawContactIds.forEach(new IntIntHashMap.Visitor() {
+            @Override
+            public void visit(int rawId, int contactId) {
+                if (!current.rawVersions.containsKey(rawId) && uniqueContactIds.add(contactId)) {
+                    contactIds.add(contactId);
+                }
+            }
+        });
+        //Members of group rows which were removed or got another sourceId
+        IntHashSet remappedLabelIds = new IntHashSet();
+        for (Map.Entry<Integer, AccNameGroup> entry : previous.groups.entrySet()) {
+            AccNameGroup group = current.groups.get(entry.getKey());
+            String previousSourceId = entry.getValue().sourceId;
+            if (group == null || (group.sourceId == null ? previousSourceId != null : !group.sourceId.equals(previousSourceId))) {
+                remappedLabelIds.add(entry.getKey());
+            }
+        }
+        if (remappedLabelIds.size() > 0) {
+            for (Map.Entry<Integer, IntArrayList> entry : previous.rawLabelIds.entrySet()) {
+                IntArrayList labelIds = entry.getValue();
+                for (int i = 0; i < labelIds.size(); i++) {
+                    if (remappedLabelIds.contains(labelIds.get(i))) {
+                        int contactId = previous.rawContactIds.get(entry.getKey(), -1);
+                        if (uniqueContactIds.add(contactId)) {
+                            contactIds.add(contactId);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return getContactsJson(current, contactIds, uniqueContactIds);
+    }
+
+    /**
+     * Builds "contacts" part of result for given contactIds. Contacts which have no rawContacts
+     * anymore are returned as removed.
+     */
+    private JSONObject getContactsJson(final VersionState current, IntArrayList contactIds,
+                                       final IntHashSet uniqueContactIds) throws JSONException {
+        final HashMap<Integer, LinkedHashSet<String>> contactSourceIds = new HashMap<>();
+        if (!contactIds.isEmpty()) {
+            current.rawContactIds.forEach(new IntIntHashMap.Visitor() {
+                @Override
+                public void visit(int rawId, int contactId) {
+                    if (!uniqueContactIds.contains(contactId)) {
+                        return;
+                    }
+                    LinkedHashSet<String> sourceIds = contactSourceIds.get(contactId);
+                    if (sourceIds == null) {
+                        sourceIds = new LinkedHashSet<>();
+                        contactSourceIds.put(contactId, sourceIds);
+                    }
+                    IntArrayList labelIds = current.rawLabelIds.get(rawId);
+                    if (labelIds == null) {
+                        return;
+                    }
+                    for (int i = 0; i < labelIds.size(); i++) {
+                        AccNameGroup group = current.groups.get(labelIds.get(i));
+                        if (group != null && group.sourceId != null) {
+                            sourceIds.add(group.sourceId);
+                        }
+                    }
+                }
+            });
+        }
+        JSONArray changed = new JSONArray();
+        JSONArray removed = new JSONArray();
+        for (int i = 0; i < contactIds.size(); i++) {
+            int contactId = contactIds.get(i);
+            LinkedHashSet<String> sourceIds = contactSourceIds.get(contactId);
+            if (sourceIds == null) {
+                removed.put(contactId);
+                continue;
+            }
+            JSONArray jsonSourceIds = new JSONArray();
+            for (String sourceId : sourceIds) {
+                jsonSourceIds.put(sourceId);
+            }
+            JSONObject contact = new JSONObject();
+            contact.put("contactId", contactId);
+            contact.put("sourceIds", jsonSourceIds);
+            changed.put(contact);
+        }
+        JSONObject contacts = new JSONObject();
+        contacts.put("changed", changed);
+        contacts.put("removed", removed);
+        return contacts;
+    }
+
+    private static JSONObject toMetadataJson(AccNameGroup group) throws JSONException {
+        JSONObject jsonGroup = new JSONObject();
+        jsonGroup.put("sourceId", group.sourceId);
+        jsonGroup.put("title", group.title);
+        jsonGroup.put("notes", group.notes);
+        jsonGroup.put("isVisible", group.isVisible);
+        jsonGroup.put("isDeleted", group.isDeleted);
+        jsonGroup.put("shouldSync", group.shouldSync);
+        jsonGroup.put("readOnly", group.readOnly);
+        return jsonGroup;
+    }
+
+    private static String[] toStringArray(IntArrayList ids) {
+        String[] array = new String[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = String.valueOf(ids.get(i));
+        }
+        return array;
+    }
+}
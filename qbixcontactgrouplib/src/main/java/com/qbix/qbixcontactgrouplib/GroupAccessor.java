@@ -1,7 +1,6 @@
 package com.qbix.qbixcontactgrouplib;
 
 import android.accounts.Account;
-import android.accounts.AccountManager;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
 import android.content.Context;
@@ -9,18 +8,38 @@ import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.os.RemoteException;
 import android.provider.ContactsContract;
-import android.util.Log;
 
 import org.apache.cordova.CordovaInterface;
+import org.json.JSONException;
+import org.json.JSONObject;
 
-import com.qbix.qbixcontactgrouplib.models.AccNameGroup;
+import com.qbix.qbixcontactgroupcore.ContactsDataSource;
+import com.qbix.qbixcontactgroupcore.LabelOperation;
+import com.qbix.qbixcontactgroupcore.LabelQuery;
+import com.qbix.qbixcontactgroupcore.LabelResolver;
+import com.qbix.qbixcontactgroupcore.LabelRow;
+import com.qbix.qbixcontactgroupcore.MembershipChanges;
+import com.qbix.qbixcontactgroupcore.Memberships;
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+import com.qbix.qbixcontactgroupcore.collections.IntBitmap;
+import com.qbix.qbixcontactgroupcore.collections.IntHashSet;
+import com.qbix.qbixcontactgroupcore.collections.IntIntHashMap;
+import com.qbix.qbixcontactgroupcore.collections.LongHashSet;
+import com.qbix.qbixcontactgrouplib.models.QbixContact;
 import com.qbix.qbixcontactgrouplib.models.QbixGroup;
-import com.qbix.qbixcontactgrouplib.models.RawIdLabelId;
-import com.qbix.qbixcontactgrouplib.utils.GroupHelper;
+import com.qbix.qbixcontactgrouplib.utils.ContactHelper;
+import com.qbix.qbixcontactgrouplib.utils.LabelIndex;
+import com.qbix.qbixcontactgrouplib.utils.Metrics;
+import com.qbix.qbixcontactgrouplib.utils.QueryPlanner;
+import com.qbix.qbixcontactgrouplib.utils.RawContactIndex;
+import com.qbix.qbixcontactgrouplib.utils.Trace;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class defines SDK-independent API for communication with
@@ -28,80 +47,219 @@ import java.util.List;
  */
 public class GroupAccessor {
 
+    private static final int MAX_OPERATIONS_PER_BATCH = 1000;
+    private static final int OPERATIONS_PER_YIELD = 250;
+    /**
+     * Contacts Provider rejects batches with more operations between yield points.
+     */
+    static final int MAX_OPERATIONS_PER_YIELD_POINT = 500;
+
     private CordovaInterface app;
+    private final LabelCache labelCache;
+    private final ChangeTracker changeTracker;
+    private final PhotoLoader photoLoader;
+    private final ProviderDataSource dataSource;
+    private final LabelIndex labelIndex;
+    private final RawContactIndex rawContactIndex;
+    private final SyncScheduler syncScheduler;
+    private final AccountRegistry accountRegistry;
 
     protected GroupAccessor(CordovaInterface context) {
         this.app = context;
+        this.labelCache = new LabelCache(this, context);
+        this.changeTracker = new ChangeTracker(context);
+        this.photoLoader = new PhotoLoader(context.getActivity().getContentResolver());
+        this.labelIndex = LabelIndex.get(context.getActivity());
+        this.rawContactIndex = RawContactIndex.get(context.getActivity());
+        this.dataSource = new ProviderDataSource(context.getActivity().getContentResolver(), labelIndex,
+                rawContactIndex);
+        this.accountRegistry = AccountRegistry.get(context.getActivity());
+        this.syncScheduler = new SyncScheduler(context, accountRegistry);
     }
 
     /**
-     * Gets all available groups for users.
+     * Gets all available groups for users. Served from in-memory snapshot, which is
+     * built again only if Contacts Provider reported a change since it was built.
      *
      * @return list of {@link QbixGroup} POJO
      */
     protected List<QbixGroup> getAllLabels() {
-        List<QbixGroup> labels = new ArrayList<>();
-        //Get all labels (including not visible and deleted ones) from content provider
-        Cursor cursor = app.getActivity().getContentResolver().query(
-                ContactsContract.Groups.CONTENT_SUMMARY_URI,
-                new String[]{
-                        ContactsContract.Groups._ID,
-                        ContactsContract.Groups.SOURCE_ID,
-                        ContactsContract.Groups.TITLE,
-                        ContactsContract.Groups.NOTES,
-                        ContactsContract.Groups.SUMMARY_COUNT,
-                        ContactsContract.Groups.GROUP_VISIBLE,
-                        ContactsContract.Groups.DELETED,
-                        ContactsContract.Groups.SHOULD_SYNC,
-                        ContactsContract.Groups.GROUP_IS_READ_ONLY
-                },
-                null,
-                null,
-                null);
-        List<String> sourceIds = new ArrayList<>();
-        List<RawIdLabelId> rawIdLabelIds = GroupHelper.getExistingRawIdLabelIdPairs(app.getActivity());
-        HashMap<String, String> rawIdContactIdPair = GroupHelper.getExistingRawIdContactIdPairs(app.getActivity());
-        while (cursor.moveToNext()) {
-            QbixGroup group = new QbixGroup();
-
-            group.sourceId = cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.SOURCE_ID));
-            group.title = cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.TITLE));
-            group.notes = cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.NOTES));
-            group.summaryCount = cursor.getInt(cursor.getColumnIndex(ContactsContract.Groups.SUMMARY_COUNT));
-            group.isVisible = cursor.getInt(cursor.getColumnIndex(ContactsContract.Groups.GROUP_VISIBLE)) == 0;
-            group.isDeleted = cursor.getInt(cursor.getColumnIndex(ContactsContract.Groups.DELETED)) == 1;
-            group.shouldSync = cursor.getInt(cursor.getColumnIndex(ContactsContract.Groups.SHOULD_SYNC)) == 1;
-            group.readOnly = cursor.getInt(cursor.getColumnIndex(ContactsContract.Groups.GROUP_IS_READ_ONLY)) == 1;
-            Log.i("group_info_checker", "id: " + cursor.getString(cursor.getColumnIndex(ContactsContract.Groups._ID)));
-            Log.i("group_info_checker", "source_id: " + group.sourceId);
-            Log.i("group_info_checker", "title: " + group.title);
-            Log.i("group_info_checker", "notes: " + group.notes);
-            Log.i("group_info_checker", "summary_count: " + group.summaryCount);
-            Log.i("group_info_checker", "is_visible: " + group.isVisible);
-            Log.i("group_info_checker", "deleted: " + group.isDeleted);
-            Log.i("group_info_checker", "should_sync: " + group.shouldSync);
-            Log.i("group_info_checker", "read_only: " + group.readOnly);
-            String labelId = cursor.getString(cursor.getColumnIndex(ContactsContract.Groups._ID));
-            List<Integer> rawIds = new ArrayList<>();
-            for (int i = 0; i < rawIdLabelIds.size(); i++) {
-                if (rawIdLabelIds.get(i).labelId.equals(labelId)) {
-                    rawIds.add(Integer.valueOf(rawIdLabelIds.get(i).rawId));
+        return labelCache.getSnapshot().labels;
+    }
+
+    /**
+     * @return generation of Contacts Provider data, it changes right after every own write and on
+     * every change notification
+     */
+    protected int getWriteGeneration() {
+        return labelCache.getGeneration();
+    }
+
+    /**
+     * Callback for pages of {@link #streamAllLabels(int, LabelPageListener)}.
+     */
+    protected interface LabelPageListener {
+        /**
+         * @param labels Labels of the page
+         * @param last   True if it is the last page
+         */
+        void onPage(List<QbixGroup> labels, boolean last);
+    }
+
+    /**
+     * Gets all available groups for users page by page. Labels and their order are the same as
+     * {@link #getAllLabels()} gives. If there is no labels snapshot in memory, group rows are read
+     * and merged by sourceId first (groups without sourceId stay separate labels), then
+     * memberships are queried only for labels of the current page, so every page is sent as soon
+     * as it is assembled.
+     *
+     * @param pageSize Max count of labels in one page
+     * @param listener Listener that gets every page
+     */
+    protected void streamAllLabels(int pageSize, LabelPageListener listener) {
+        LabelSnapshot snapshot = labelCache.peekSnapshot();
+        if (snapshot != null) {
+            List<QbixGroup> labels = snapshot.labels;
+            int start = 0;
+            do {
+                int end = Math.min(labels.size(), start + pageSize);
+                listener.onPage(labels.subList(start, end), end == labels.size());
+                start = end;
+            } while (start < labels.size());
+            return;
+        }
+        final List<QbixGroup> labels = new ArrayList<>();
+        //Label ids (of all accounts) of every label, in the same order as labels
+        final List<IntArrayList> labelIds = new ArrayList<>();
+        final HashMap<String, Integer> labelIndexBySourceId = new HashMap<>();
+        //Same rows in the same provider order as the snapshot is resolved from
+        dataSource.readGroups(null, new ContactsDataSource.GroupVisitor() {
+            @Override
+            public void visit(LabelRow row) {
+                Integer index = row.sourceId == null ? null : labelIndexBySourceId.get(row.sourceId);
+                if (index == null) {
+                    index = labels.size();
+                    if (row.sourceId != null) {
+                        labelIndexBySourceId.put(row.sourceId, index);
+                    }
+                    labels.add(LabelSnapshot.toGroup(row));
+                    labelIds.add(new IntArrayList(2));
                 }
+                labelIds.get(index).add(row.labelId);
             }
-            List<Integer> contactIds = GroupHelper.getContactIds(rawIdContactIdPair, rawIds);
-            if (!sourceIds.contains(cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.SOURCE_ID)))) {
-                group.contactIds = contactIds;
-                sourceIds.add(cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.SOURCE_ID)));
-                labels.add(group);
-            } else {
-                int index = sourceIds.indexOf(cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.SOURCE_ID)));
-                labels.get(index).contactIds.addAll(contactIds);
-                Log.i("group_info_checker", "group: " + cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.SOURCE_ID)) + " is existing");
+        });
+        int start = 0;
+        do {
+            int end = Math.min(labels.size(), start + pageSize);
+            sendLabelPage(labels.subList(start, end), labelIds.subList(start, end), end == labels.size(), listener);
+            start = end;
+        } while (start < labels.size());
+    }
+
+    /**
+     * Fills contactIds of page's groups and passes page to listener.
+     *
+     * @param page         Groups of the page
+     * @param pageLabelIds Label ids (of all accounts) of every group in the page
+     * @param last         True if it is the last page
+     * @param listener     Listener that gets the page
+     */
+    private void sendLabelPage(List<QbixGroup> page, List<IntArrayList> pageLabelIds,
+                               boolean last, LabelPageListener listener) {
+        fillContactIds(page, pageLabelIds);
+        listener.onPage(page, last);
+    }
+
+    /**
+     * Fills contactIds of given groups with one batched membership query (chunked if needed).
+     * summaryCount of every group is counted from the same memberships, as resolver does for
+     * snapshot.
+     *
+     * @param groups        Groups which contactIds must be filled
+     * @param groupLabelIds Label ids (of all accounts) of every group, in the same order as groups,
+     *                      the first one is id of the group's own row
+     */
+    private void fillContactIds(final List<? extends QbixGroup> groups, List<IntArrayList> groupLabelIds) {
+        final IntIntHashMap labelIdGroupIndex = new IntIntHashMap();
+        //key - id of group's own row, value - index of group
+        final IntIntHashMap rowIdGroupIndex = new IntIntHashMap();
+        List<String> labelIds = new ArrayList<>();
+        final List<IntHashSet> uniqueContactIds = new ArrayList<>();
+        final List<IntHashSet> rowContactIds = new ArrayList<>();
+        for (int i = 0; i < groupLabelIds.size(); i++) {
+            IntArrayList labelIdsOfGroup = groupLabelIds.get(i);
+            for (int j = 0; j < labelIdsOfGroup.size(); j++) {
+                labelIdGroupIndex.put(labelIdsOfGroup.get(j), i);
+                labelIds.add(String.valueOf(labelIdsOfGroup.get(j)));
             }
+            rowIdGroupIndex.put(labelIdsOfGroup.get(0), i);
+            uniqueContactIds.add(new IntHashSet());
+            rowContactIds.add(new IntHashSet());
+            groups.get(i).contactIds = new IntArrayList();
+            groups.get(i).summaryCount = 0;
+        }
+        //Data rows carry aggregated contact id, so there is no need in rawContactId mapping
+        QueryPlanner.query(app.getActivity().getContentResolver(),
+                ContactsContract.Data.CONTENT_URI,
+                new String[]{
+                        ContactsContract.Data.CONTACT_ID,
+                        ContactsContract.Data.DATA1
+                },
+                ContactsContract.Data.MIMETYPE + "=?",
+                new String[]{ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE},
+                ContactsContract.Data.DATA1, labelIds.toArray(new String[labelIds.size()]),
+                new QueryPlanner.RowHandler() {
+                    @Override
+                    public void onRow(Cursor cursor) {
+                        int groupIndex = labelIdGroupIndex.get(cursor.getInt(1), -1);
+                        int contactId = cursor.getInt(0);
+                        if (groupIndex != -1 && uniqueContactIds.get(groupIndex).add(contactId)) {
+                            groups.get(groupIndex).contactIds.add(contactId);
+                        }
+                        int rowGroupIndex = rowIdGroupIndex.get(cursor.getInt(1), -1);
+                        if (rowGroupIndex != -1 && rowContactIds.get(rowGroupIndex).add(contactId)) {
+                            groups.get(rowGroupIndex).summaryCount++;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Gets labels and memberships changed since given version token.
+     *
+     * @param token Token from previous result or null for full result
+     * @return changes and new token (see {@link ChangeTracker#getChanges(String)})
+     * @throws JSONException if result can't be built
+     */
+    protected JSONObject getChanges(String token) throws JSONException {
+        return changeTracker.getChanges(token);
+    }
+
+    /**
+     * Stops observing Contacts Provider changes and requests pending syncs. Must be called when
+     * accessor is not needed anymore.
+     */
+    protected void release() {
+        labelCache.release();
+        photoLoader.clear();
+        syncScheduler.flush();
+    }
 
+    /**
+     * Scans all labels and their memberships from content provider and joins them with
+     * {@link LabelResolver#resolveAll(com.qbix.qbixcontactgroupcore.ContactsDataSource)}.
+     *
+     * @return new {@link LabelSnapshot}
+     */
+    LabelSnapshot loadLabelSnapshot() {
+        Trace.Span span = Trace.beginRoot("loadLabelSnapshot");
+        try {
+            LabelSnapshot snapshot = new LabelSnapshot(LabelResolver.resolveAll(dataSource));
+            Trace.attr(span, "labels", snapshot.labels.size());
+            return snapshot;
+        } finally {
+            Trace.end(span);
         }
-        cursor.close();
-        return labels;
     }
 
     /**
@@ -112,89 +270,263 @@ public class GroupAccessor {
      * @return success message if succeeded and exception message if failed
      */
     protected String removeLabelFromContacts(String sourceId, String[] contactIds) {
-        ArrayList<ContentProviderOperation> ops =
-                new ArrayList<>();
-        String[] rawContactIds = GroupHelper.getRawContactIds(app.getActivity(), contactIds);
-        HashMap<String, String> rawIdAccName = GroupHelper.getRawContactIdAccountNamePair(app.getActivity(), rawContactIds);
-        HashMap<String, String> accNameLabelId = GroupHelper.getAccountNameLabelIdPair(app.getActivity(), sourceId);
-        List<RawIdLabelId> existingLabels = GroupHelper.getExistingRawIdLabelIdPairs(app.getActivity(), rawContactIds);
-
-        for (int i = 0; i < rawContactIds.length; i++) {
-            String labelId = accNameLabelId.get(rawIdAccName.get(rawContactIds[i]));
-            if (labelId != null) {
-                for (int j = 0; j < existingLabels.size(); j++) {
-                    if (existingLabels.get(j).rawId.equals(rawContactIds[i])&&existingLabels.get(j).labelId.equals(labelId)) {
-                        ops.add(ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
-                                .withSelection(ContactsContract.Data.MIMETYPE + "='" + ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE
-                                                + "' AND " + ContactsContract.Data.DATA1 + "='" + labelId
-                                                + "' AND " + ContactsContract.Data.RAW_CONTACT_ID + "='"+rawContactIds[i],
-                                        null)
-                                .withYieldAllowed(i == rawContactIds.length - 1)
-                                .build());
-                    } else {
-                        Log.d("delete_checker", "not that one!!! " + rawContactIds[i]);
-                    }
+        List<LabelOperation> operations = new ArrayList<>();
+        operations.add(new LabelOperation(false, sourceId, contactIds));
+        return updateLabels(operations);
+    }
+
+    /**
+     * Add label to given contacts.
+     *
+     * @param sourceId   source id which label wanted to be added
+     * @param contactIds Contact id's array to which label should be added
+     * @return success message if succeeded and exception message if failed
+     */
+    protected String addLabelToContacts(String sourceId, String[] contactIds) {
+        List<LabelOperation> operations = new ArrayList<>();
+        operations.add(new LabelOperation(true, sourceId, contactIds));
+        return updateLabels(operations);
+    }
+
+    /**
+     * Adds labels to and removes labels from contacts. Lookups are shared by all operations
+     * (rawContacts with their accounts, label ids of every sourceId and existing memberships are
+     * read once) and all changes are applied with {@link #applyBatched(List)}.
+     * Operations are applied in given order: only the net change of every membership is written,
+     * removals are done with one delete per label (and chunk of rawContacts). Changes are not
+     * atomic as a whole, see {@link #applyBatched(List)}.
+     *
+     * @param operations Add/remove operations
+     * @return success message if succeeded and exception message if failed
+     */
+    protected String updateLabels(List<LabelOperation> operations) {
+        MembershipChanges changes = LabelResolver.planUpdates(dataSource, operations);
+        final List<ContentProviderOperation.Builder> builders = new ArrayList<>();
+        //Removals of one label are collapsed into "RAW_CONTACT_ID IN(...)" deletes
+        for (Map.Entry<Integer, IntArrayList> entry : changes.deletesByLabelId.entrySet()) {
+            IntArrayList rawIds = entry.getValue();
+            for (int start = 0; start < rawIds.size(); start += QueryPlanner.MAX_CHUNK_SIZE) {
+                int chunkSize = Math.min(QueryPlanner.MAX_CHUNK_SIZE, rawIds.size() - start);
+                String[] args = new String[chunkSize + 2];
+                args[0] = ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE;
+                args[1] = String.valueOf(entry.getKey());
+                for (int i = 0; i < chunkSize; i++) {
+                    args[i + 2] = String.valueOf(rawIds.get(start + i));
                 }
-            } else {
-                Log.d("delete_checker", "no label for that contact" + rawContactIds[i]);
+                builders.add(ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
+                        .withSelection(ContactsContract.Data.MIMETYPE + "=? AND "
+                                        + ContactsContract.Data.DATA1 + "=? AND "
+                                        + ContactsContract.Data.RAW_CONTACT_ID + QueryPlanner.getInSuffix(chunkSize),
+                                args));
             }
         }
+        changes.inserts.forEach(new LongHashSet.Visitor() {
+            @Override
+            public void visit(long membership) {
+                builders.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                        .withValue(ContactsContract.Data.RAW_CONTACT_ID, Memberships.unpackRawContactId(membership))
+                        .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE)
+                        .withValue(ContactsContract.Data.DATA1, Memberships.unpackLabelId(membership)));
+            }
+        });
+        return applyBatched(builders);
+    }
 
+    /**
+     * Applies operations with as few {@link android.content.ContentResolver#applyBatch} calls as
+     * possible: up to {@link #MAX_OPERATIONS_PER_BATCH} operations per call, with a yield point
+     * every {@link #OPERATIONS_PER_YIELD} operations (Contacts Provider rejects batches with too
+     * many operations between yield points).
+     * Operations are not atomic together: calls and yield points commit separately, so if a call
+     * fails, operations of earlier calls (and earlier yield points of the failed one) stay applied.
+     *
+     * @param builders Builders of operations in order they must be applied
+     * @return success message if succeeded, exception message if the first call failed and
+     * {@link QUsersCordova#PARTIALLY_APPLIED_ERROR} with count of applied operations (operations
+     * of successful calls) if a later call failed
+     */
+    private String applyBatched(List<ContentProviderOperation.Builder> builders) {
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        int applied = 0;
         try {
-            app.getActivity().getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
+            for (int i = 0; i < builders.size(); i++) {
+                ops.add(builders.get(i)
+                        .withYieldAllowed(ops.size() > 0 && ops.size() % OPERATIONS_PER_YIELD == 0)
+                        .build());
+                if (ops.size() == MAX_OPERATIONS_PER_BATCH || i == builders.size() - 1) {
+                    applyBatch(ops);
+                    applied += ops.size();
+                    ops = new ArrayList<>();
+                }
+            }
         } catch (RemoteException e) {
             e.printStackTrace();
-            return e.getMessage();
+            return getBatchedError(e, applied, builders.size());
         } catch (OperationApplicationException e) {
             e.printStackTrace();
-            return e.getMessage();
+            return getBatchedError(e, applied, builders.size());
         }
         return QUsersCordova.SUCCESS;
     }
 
     /**
-     * Add label to given contacts.
+     * @param e       Exception of the failed call
+     * @param applied Count of operations of successful calls
+     * @param total   Count of all operations
+     * @return error message of {@link #applyBatched(List)}
+     */
+    private static String getBatchedError(Exception e, int applied, int total) {
+        if (applied == 0) {
+            return e.getMessage();
+        }
+        return QUsersCordova.PARTIALLY_APPLIED_ERROR + ": " + applied + " of " + total
+                + " operations applied (" + e.getMessage() + ")";
+    }
+
+    /**
+     * Runs one {@link android.content.ContentResolver#applyBatch} call, recording it in
+     * {@link Metrics} and {@link Trace}. Labels snapshot is dropped and process-wide indexes are
+     * marked stale right after the call (even if it failed, batch with yield points can be applied
+     * partly), so next read never gets labels from before the write, whenever the change
+     * notification reaches main thread.
      *
-     * @param sourceId   source id which label wanted to be added
-     * @param contactIds Contact id's array to which label should be added
-     * @return success message if succeeded and exception message if failed
+     * @param ops Operations of the batch
+     * @return results of operations
      */
-    protected String addLabelToContacts(String sourceId, String[] contactIds) {
-        ArrayList<ContentProviderOperation> ops =
-                new ArrayList<>();
-        String[] rawContactIds = GroupHelper.getRawContactIds(app.getActivity(), contactIds);
-        HashMap<String, String> rawIdAccName = GroupHelper.getRawContactIdAccountNamePair(app.getActivity(), rawContactIds);
-        HashMap<String, String> accNameLabelId = GroupHelper.getAccountNameLabelIdPair(app.getActivity(), sourceId);
-        List<RawIdLabelId> existingLabels = GroupHelper.getExistingRawIdLabelIdPairs(app.getActivity(), rawContactIds);
-        for (int i = 0; i < rawContactIds.length; i++) {
-            String labelId = accNameLabelId.get(rawIdAccName.get(rawContactIds[i]));
-            boolean exists = false;
-            if (labelId != null) {
-                for (int j = 0; j < existingLabels.size(); j++) {
-                    if(existingLabels.get(j).rawId.equals(rawContactIds[i])&&existingLabels.get(j).labelId.equals(labelId)){
-                        exists = true;
+    private ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> ops)
+            throws RemoteException, OperationApplicationException {
+        Trace.Span span = Trace.begin("applyBatch");
+        Trace.attr(span, "operations", ops.size());
+        long start = System.nanoTime();
+        try {
+            ContentProviderResult[] results = app.getActivity().getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
+            long affectedRows = 0;
+            for (ContentProviderResult result : results) {
+                affectedRows += result.count == null ? 1 : result.count;
+            }
+            Trace.attr(span, "affectedRows", affectedRows);
+            return results;
+        } finally {
+            labelCache.invalidate();
+            labelIndex.invalidate();
+            rawContactIndex.invalidate();
+            Trace.end(span);
+            Metrics.recordApplyBatch(ops.size(), start);
+        }
+    }
+
+    /**
+     * @param accountNames Names of accounts, null for all accounts which Contacts can be synced
+     * @return accounts with given names (every type) or all syncable accounts
+     */
+    protected List<Account> getAccounts(List<String> accountNames) {
+        if (accountNames == null) {
+            return accountRegistry.getSyncableAccounts();
+        }
+        List<Account> accounts = new ArrayList<>();
+        for (String accountName : accountNames) {
+            accounts.addAll(accountRegistry.getAccounts(accountName));
+        }
+        return accounts;
+    }
+
+    /**
+     * Creates label with given sourceId: a group row in every given account and, optionally,
+     * memberships of given contacts. Everything is written with one atomic
+     * {@link android.content.ContentResolver#applyBatch} call, so label is never created only in
+     * some accounts. Memberships refer to group rows inserted earlier in the same batch with back
+     * references. Every rawContact gets the group of its own account (name and type, so accounts
+     * of different types with the same name get separate group rows), rawContacts of other
+     * accounts are skipped. Batch has no yield points (they would commit it in parts), so it can
+     * have at most {@link #MAX_OPERATIONS_PER_YIELD_POINT} operations: one per account and one per
+     * added rawContact.
+     *
+     * @param sourceId   Source id of the new label
+     * @param title      Title of the label
+     * @param notes      Notes of the label (can be null)
+     * @param accounts   Accounts which must have the label
+     * @param contactIds Ids of contacts which must be added to the label (can be empty)
+     * @return success message if succeeded and error message if failed
+     */
+    protected String createLabel(String sourceId, String title, String notes, Collection<Account> accounts,
+                                 int[] contactIds) {
+        if (accounts.isEmpty()) {
+            return QUsersCordova.NO_ACCOUNTS_ERROR;
+        }
+        final ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        //value - index of operation which inserts group row of the account
+        final HashMap<Account, Integer> groupOpIndexByAccount = new HashMap<>();
+        for (Account account : accounts) {
+            if (groupOpIndexByAccount.containsKey(account)) {
+                continue;
+            }
+            groupOpIndexByAccount.put(account, ops.size());
+            ops.add(ContentProviderOperation.newInsert(ContactsContract.Groups.CONTENT_URI)
+                    .withValue(ContactsContract.Groups.ACCOUNT_NAME, account.name)
+                    .withValue(ContactsContract.Groups.ACCOUNT_TYPE, account.type)
+                    .withValue(ContactsContract.Groups.SOURCE_ID, sourceId)
+                    .withValue(ContactsContract.Groups.TITLE, title)
+                    .withValue(ContactsContract.Groups.NOTES, notes)
+                    .withValue(ContactsContract.Groups.GROUP_VISIBLE, 1)
+                    .withValue(ContactsContract.Groups.SHOULD_SYNC, 1)
+                    .build());
+        }
+        if (contactIds.length > 0) {
+            dataSource.readRawContacts(contactIds, new ContactsDataSource.RawContactVisitor() {
+                @Override
+                public void visit(int rawContactId, int contactId, String accountName, String accountType) {
+                    Integer groupOpIndex = accountName == null || accountType == null ? null
+                            : groupOpIndexByAccount.get(new Account(accountName, accountType));
+                    if (groupOpIndex == null) {
+                        return;
                     }
-                }
-                if (!exists) {
                     ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-                            .withValue(ContactsContract.Data.RAW_CONTACT_ID, rawContactIds[i])
+                            .withValue(ContactsContract.Data.RAW_CONTACT_ID, rawContactId)
                             .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE)
-                            .withValue(ContactsContract.Data.DATA1, accNameLabelId.get(rawIdAccName.get(rawContactIds[i])))
-                            .withYieldAllowed(i == contactIds.length - 1)
+                            .withValueBackReference(ContactsContract.CommonDataKinds.GroupMembership.GROUP_ROW_ID, groupOpIndex)
                             .build());
-                } else {
-                    Log.d("duplicate_checker", "duplicate!!! " + rawContactIds[i]);
                 }
-
-            } else {
-                Log.d("duplicate_checker", "no label for that contact" + rawContactIds[i]);
-            }
+            });
+        }
+        if (ops.size() > MAX_OPERATIONS_PER_YIELD_POINT) {
+            return QUsersCordova.TOO_MANY_OPERATIONS_ERROR;
         }
+        try {
+            applyBatch(ops);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+            return e.getMessage();
+        } catch (OperationApplicationException e) {
+            e.printStackTrace();
+            return e.getMessage();
+        }
+        syncScheduler.requestSync(accounts);
+        return QUsersCordova.SUCCESS;
+    }
 
+    /**
+     * Renames label in every account with one update of all its writable group rows. Fails if
+     * no row was renamed (every group row of the label is read only).
+     *
+     * @param sourceId Source id of the label
+     * @param title    New title of the label
+     * @return success message if succeeded and error message if failed
+     */
+    protected String renameLabel(String sourceId, String title) {
+        if (labelIndex.getLabelIds(sourceId).length == 0) {
+            return QUsersCordova.LABEL_NOT_FOUND_ERROR;
+        }
+        List<Account> accounts = labelIndex.getAccounts(sourceId);
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        ops.add(ContentProviderOperation.newUpdate(ContactsContract.Groups.CONTENT_URI)
+                .withSelection(ContactsContract.Groups.SOURCE_ID + "=? AND "
+                        + ContactsContract.Groups.GROUP_IS_READ_ONLY + "=0", new String[]{sourceId})
+                .withValue(ContactsContract.Groups.TITLE, title)
+                .build());
         try {
-            ContentProviderResult[] results = app.getActivity().getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
-            if (results.length >= 1) {
-                Log.d("duplicate_checker", results[0].toString());
+            ContentProviderResult[] results = applyBatch(ops);
+            if (results[0].count == null || results[0].count == 0) {
+                return QUsersCordova.READ_ONLY_LABEL_ERROR;
             }
         } catch (RemoteException e) {
             e.printStackTrace();
@@ -203,11 +535,13 @@ public class GroupAccessor {
             e.printStackTrace();
             return e.getMessage();
         }
+        syncScheduler.requestSync(accounts);
         return QUsersCordova.SUCCESS;
     }
 
     /**
-     * Removes label from database and syncs all accounts.
+     * Removes label from database and schedules sync of accounts that had it
+     * (if they are not synced, deleted label can be shown to user till system syncs automatically).
      *
      * @param sourceId Source id that is wanted to be deleted
      * @return success message if succeed and exception message if failed
@@ -220,89 +554,149 @@ public class GroupAccessor {
                 .withSelection(ContactsContract.Groups.SOURCE_ID + "=?", new String[]{sourceId})
                 .withYieldAllowed(true)
                 .build());
+        List<Account> accounts = labelIndex.getAccounts(sourceId);
         try {
-            ContentProviderResult[] result = app.getActivity().getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
-            Log.d("delete_checker", "removeLabelFromData: " + result.toString());
+            applyBatch(ops);
         } catch (RemoteException e) {
             e.printStackTrace();
             return e.getMessage();
         } catch (OperationApplicationException e) {
-            Log.d("error_tag", e.getMessage());
             e.printStackTrace();
             return e.getMessage();
         }
-        GroupHelper.requestSyncNow(app.getActivity());
+        syncScheduler.requestSync(accounts);
         return QUsersCordova.SUCCESS;
     }
 
     /**
-     * Gets labels that have given sourceIds.
+     * Gets labels that have given sourceIds. summaryCount of every label is count of members of
+     * the returned account's group row, whether labels come from snapshot or not (contactIds have
+     * members of all accounts).
      *
      * @param sourceIds Source ids list which labels wanted to be returned.
      * @return list of {@link QbixGroup} POJO
      */
     protected List<QbixGroup> getLabelsBySourceId(String[] sourceIds) {
-        Cursor groupCursor = app.getActivity().getContentResolver().query(ContactsContract.Groups.CONTENT_SUMMARY_URI,
-                new String[]{
-                        ContactsContract.Groups.SOURCE_ID,
-                        ContactsContract.Groups.TITLE,
-                        ContactsContract.Groups.ACCOUNT_NAME,
-                        ContactsContract.Groups.NOTES,
-                        ContactsContract.Groups.SUMMARY_COUNT,
-                        ContactsContract.Groups.GROUP_VISIBLE,
-                        ContactsContract.Groups.DELETED,
-                        ContactsContract.Groups.SHOULD_SYNC,
-                        ContactsContract.Groups.GROUP_IS_READ_ONLY
-                },
-                ContactsContract.Groups.SOURCE_ID + GroupHelper.getSuffix(sourceIds.length),
-                sourceIds,
-                null);
-        AccountManager accountManager = AccountManager.get(app.getActivity());
-        Account[] accounts = accountManager.getAccounts();
-        List<AccNameGroup> accNameGroups = new ArrayList<>();
-        HashMap<String, String> rawIdContactIdPair = GroupHelper.getExistingRawIdContactIdPairs(app.getActivity());
-        while (groupCursor.moveToNext()) {
-            AccNameGroup group = new AccNameGroup();
-            group.sourceId = groupCursor.getString(groupCursor.getColumnIndex(ContactsContract.Groups.SOURCE_ID));
-            group.title = groupCursor.getString(groupCursor.getColumnIndex(ContactsContract.Groups.TITLE));
-            group.accountName = groupCursor.getString(groupCursor.getColumnIndex(ContactsContract.Groups.ACCOUNT_NAME));
-            group.summaryCount = groupCursor.getInt(groupCursor.getColumnIndex(ContactsContract.Groups.SUMMARY_COUNT));
-            group.notes = groupCursor.getString(groupCursor.getColumnIndex(ContactsContract.Groups.NOTES));
-            group.isVisible = groupCursor.getInt(groupCursor.getColumnIndex(ContactsContract.Groups.GROUP_VISIBLE)) == 0;
-            group.isDeleted = groupCursor.getInt(groupCursor.getColumnIndex(ContactsContract.Groups.DELETED)) == 1;
-            group.shouldSync = groupCursor.getInt(groupCursor.getColumnIndex(ContactsContract.Groups.SHOULD_SYNC)) == 1;
-            group.readOnly = groupCursor.getInt(groupCursor.getColumnIndex(ContactsContract.Groups.GROUP_IS_READ_ONLY)) == 1;
-            if (group.sourceId != null) {
-                accNameGroups.add(group);
-            }
+        Set<String> accountNames = accountRegistry.getAccountNames();
+        LabelSnapshot snapshot = labelCache.peekSnapshot();
+        if (snapshot != null) {
+            return snapshot.getLabelsBySourceId(sourceIds, accountNames);
         }
-        groupCursor.close();
-        List<String> uniqueSourceId = new ArrayList<>();
-        List<QbixGroup> finalGroups = new ArrayList<>();
-        for (int i = 0; i < accNameGroups.size(); i++) {
-            AccNameGroup accNameGroup = accNameGroups.get(i);
-            if (!uniqueSourceId.contains(accNameGroup.sourceId)) {
-                GetRealGroup:
-                {
-                    for (int j = 0; j < accounts.length; j++) {
-                        if (accNameGroup.accountName.equals(accounts[j].name)) {
-                            for (int k = 0; k < accNameGroups.size(); k++) {
-                                AccNameGroup realGroup = accNameGroups.get(k);
-                                if (realGroup.sourceId.equals(accNameGroup.sourceId) && realGroup.accountName.equals(accNameGroup.accountName)) {
-                                    realGroup.contactIds = GroupHelper.getContactIds(rawIdContactIdPair,
-                                            GroupHelper.getRawIdsBySourceId(app.getActivity(), realGroup.sourceId));
-                                    finalGroups.add(realGroup);
-                                    uniqueSourceId.add(realGroup.sourceId);
-                                    break GetRealGroup;
-                                }
-                            }
-                        }
-                    }
+        List<QbixGroup> groups = new ArrayList<>();
+        for (LabelRow row : LabelResolver.resolveBySourceId(dataSource, sourceIds, accountNames)) {
+            groups.add(LabelSnapshot.toGroup(row));
+        }
+        return groups;
+    }
+
+    /**
+     * Evaluates set expression over label members. Members come from labels snapshot if there is
+     * a valid one, otherwise only labels used by the expression are resolved.
+     *
+     * @param query Expression over labels
+     * @return contact ids matched by the expression
+     */
+    protected IntBitmap queryLabels(LabelQuery query) {
+        final Set<String> accountNames = accountRegistry.getAccountNames();
+        final LabelSnapshot snapshot = labelCache.peekSnapshot();
+        if (snapshot != null) {
+            return query.evaluate(new LabelQuery.Members() {
+                @Override
+                public IntBitmap get(String sourceId) {
+                    return snapshot.getMembers(sourceId, accountNames);
+                }
+            });
+        }
+        Set<String> sourceIds = query.getSourceIds();
+        final HashMap<String, IntBitmap> membersBySourceId = new HashMap<>();
+        for (LabelRow row : LabelResolver.resolveBySourceId(dataSource,
+                sourceIds.toArray(new String[sourceIds.size()]), accountNames)) {
+            membersBySourceId.put(row.sourceId, IntBitmap.of(row.contactIds.toArray()));
+        }
+        return query.evaluate(new LabelQuery.Members() {
+            @Override
+            public IntBitmap get(String sourceId) {
+                IntBitmap members = membersBySourceId.get(sourceId);
+                return members == null ? IntBitmap.EMPTY : members;
+            }
+        });
+    }
+
+    /**
+     * Gets members of labels that have given sourceIds with one pass over Data table.
+     *
+     * @param sourceIds Source ids of labels which members wanted to be returned
+     * @param mimeTypes Mimetypes of Data rows that must be read into contacts
+     * @return list of {@link QbixContact} POJO (every member once)
+     */
+    protected List<QbixContact> getContactsBySourceId(String[] sourceIds, Collection<String> mimeTypes) {
+        IntArrayList contactIds = new IntArrayList();
+        IntHashSet addedContactIds = new IntHashSet();
+        for (QbixGroup group : getLabelsBySourceId(sourceIds)) {
+            for (int i = 0; i < group.contactIds.size(); i++) {
+                if (addedContactIds.add(group.contactIds.get(i))) {
+                    contactIds.add(group.contactIds.get(i));
                 }
             }
         }
+        return ContactHelper.getContacts(app.getActivity(), contactIds, mimeTypes);
+    }
 
-        return finalGroups;
+    /**
+     * Gets downscaled photo of contact.
+     *
+     * @param contactId Id of contact
+     * @param size      Max width and height of photo in pixels
+     * @return JPEG bytes or null if contact has no photo
+     */
+    protected byte[] getPhoto(int contactId, int size) {
+        return photoLoader.getThumbnail(contactId, size);
     }
 
+    /**
+     * Gets sourceIds of labels of every given contact. GroupMembership rows of all contacts are
+     * read with one chunked Data query (contacts of all rawContacts at once), label ids are
+     * mapped to sourceIds with {@link LabelIndex}.
+     *
+     * @param contactIds Ids of contacts
+     * @return sourceIds of every contact (index - index of contact in contactIds, repeated contact
+     * gets the same sourceIds at every index), every sourceId once
+     */
+    protected List<List<String>> getLabelsForContacts(int[] contactIds) {
+        final IntIntHashMap contactIndexById = new IntIntHashMap(contactIds.length);
+        final List<List<String>> sourceIds = new ArrayList<>(contactIds.length);
+        List<String> ids = new ArrayList<>(contactIds.length);
+        for (int i = 0; i < contactIds.length; i++) {
+            int firstIndex = contactIndexById.get(contactIds[i], -1);
+            if (firstIndex >= 0) {
+                //Repeated contact shares the list of its first occurrence
+                sourceIds.add(sourceIds.get(firstIndex));
+                continue;
+            }
+            contactIndexById.put(contactIds[i], i);
+            sourceIds.add(new ArrayList<String>(2));
+            ids.add(String.valueOf(contactIds[i]));
+        }
+        QueryPlanner.query(app.getActivity().getContentResolver(),
+                ContactsContract.Data.CONTENT_URI,
+                new String[]{
+                        ContactsContract.Data.CONTACT_ID,
+                        ContactsContract.Data.DATA1
+                },
+                ContactsContract.Data.MIMETYPE + "=?",
+                new String[]{ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE},
+                ContactsContract.Data.CONTACT_ID, ids.toArray(new String[ids.size()]),
+                new QueryPlanner.RowHandler() {
+                    @Override
+                    public void onRow(Cursor cursor) {
+                        int index = contactIndexById.get(cursor.getInt(0), -1);
+                        String sourceId = index < 0 ? null : labelIndex.getSourceId(cursor.getInt(1));
+                        //Labels are few per contact, so list lookup is cheaper than a set
+                        if (sourceId != null && !sourceIds.get(index).contains(sourceId)) {
+                            sourceIds.get(index).add(sourceId);
+                        }
+                    }
+                });
+        return sourceIds;
+    }
 }
@@ -0,0 +1,113 @@
+package com.qbix.qbixcontactgrouplib;
+
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+
+import org.apache.cordova.CordovaInterface;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps last {@link LabelSnapshot} in memory. Snapshot is built on first request and dropped on
+ * every Contacts Provider change notification. Nothing is rebuilt in background: a burst of
+ * notifications (e.g. account sync) only drops the snapshot, next request that needs it builds it
+ * again.
+ */
+class LabelCache {
+
+    private final GroupAccessor accessor;
+    private final CordovaInterface app;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Object buildLock = new Object();
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile LabelSnapshot snapshot;
+    private volatile boolean released;
+    private boolean observing;
+
+    private final ContentObserver observer = new ContentObserver(handler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    LabelCache(GroupAccessor accessor, CordovaInterface app) {
+        this.accessor = accessor;
+        this.app = app;
+    }
+
+    /**
+     * Gets current snapshot, building it if there is no valid one.
+     *
+     * @return labels snapshot
+     */
+    LabelSnapshot getSnapshot() {
+        LabelSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (buildLock) {
+            current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            if (released) {
+                return accessor.loadLabelSnapshot();
+            }
+            //Observe before scanning, so changes made during the scan are not missed
+            startObserving();
+            int buildGeneration = generation.get();
+            LabelSnapshot built = accessor.loadLabelSnapshot();
+            if (buildGeneration == generation.get()) {
+                snapshot = built;
+            }
+            return built;
+        }
+    }
+
+    /**
+     * @return current snapshot or null if there is no valid one
+     */
+    LabelSnapshot peekSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return generation of Contacts Provider data, it changes on every invalidation
+     */
+    int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Drops current snapshot, it is built again on next {@link #getSnapshot()}.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * Stops observing Contacts Provider and drops snapshot.
+     */
+    void release() {
+        released = true;
+        synchronized (buildLock) {
+            if (observing) {
+                app.getActivity().getContentResolver().unregisterContentObserver(observer);
+                observing = false;
+            }
+            generation.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+    private void startObserving() {
+        if (!observing) {
+            app.getActivity().getContentResolver().registerContentObserver(ContactsContract.AUTHORITY_URI, true, observer);
+            observing = true;
+        }
+    }
+}
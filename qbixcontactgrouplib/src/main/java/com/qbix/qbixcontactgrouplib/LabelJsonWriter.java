@@ -0,0 +1,174 @@
+package com.qbix.qbixcontactgrouplib;
+
+import com.qbix.qbixcontactgrouplib.models.QbixGroup;
+
+import org.apache.cordova.PluginResult;
+
+import java.util.List;
+
+/**
+ * Writes labels as JSON straight into per-thread reused StringBuilder, without building
+ * JSONObject tree for every label. Output has the same shape as {@link QbixGroup#toJson()}
+ * (null fields are omitted the same way).
+ */
+class LabelJsonWriter {
+
+    /**
+     * Buffers bigger than this are not kept for reuse, so one huge result doesn't pin memory.
+     */
+    private static final int MAX_REUSED_CAPACITY = 1024 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(4096);
+        }
+    };
+
+    /**
+     * Plugin result which message is already serialized JSON, so Cordova sends it as is.
+     */
+    static class JsonResult extends PluginResult {
+        private final String json;
+
+        JsonResult(String json) {
+            super(Status.OK);
+            this.json = json;
+        }
+
+        @Override
+        public int getMessageType() {
+            return MESSAGE_TYPE_JSON;
+        }
+
+        @Override
+        public String getMessage() {
+            return json;
+        }
+    }
+
+    /**
+     * @param labels Labels that must be written
+     * @return JSON array of labels
+     */
+    static String writeLabels(List<QbixGroup> labels) {
+        StringBuilder builder = obtainBuffer();
+        writeLabels(builder, labels);
+        return release(builder);
+    }
+
+    /**
+     * @param labels Labels of the page
+     * @param page   Index of the page
+     * @param done   True if it is the last page
+     * @return JSON object with "labels", "page" and "done"
+     */
+    static String writePage(List<QbixGroup> labels, int page, boolean done) {
+        StringBuilder builder = obtainBuffer();
+        builder.append("{\"labels\":");
+        writeLabels(builder, labels);
+        builder.append(",\"page\":").append(page)
+                .append(",\"done\":").append(done)
+                .append('}');
+        return release(builder);
+    }
+
+    private static StringBuilder obtainBuffer() {
+        StringBuilder builder = BUFFER.get();
+        builder.setLength(0);
+        return builder;
+    }
+
+    private static String release(StringBuilder builder) {
+        String json = builder.toString();
+        if (builder.capacity() > MAX_REUSED_CAPACITY) {
+            BUFFER.remove();
+        } else {
+            builder.setLength(0);
+        }
+        return json;
+    }
+
+    private static void writeLabels(StringBuilder builder, List<QbixGroup> labels) {
+        builder.append('[');
+        for (int i = 0; i < labels.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            writeLabel(builder, labels.get(i));
+        }
+        builder.append(']');
+    }
+
+    private static void writeLabel(StringBuilder builder, QbixGroup label) {
+        builder.append('{');
+        if (label.sourceId != null) {
+            builder.append("\"sourceId\":");
+            writeString(builder, label.sourceId);
+            builder.append(',');
+        }
+        if (label.title != null) {
+            builder.append("\"title\":");
+            writeString(builder, label.title);
+            builder.append(',');
+        }
+        if (label.notes != null) {
+            builder.append("\"notes\":");
+            writeString(builder, label.notes);
+            builder.append(',');
+        }
+        builder.append("\"summaryCount\":").append(label.summaryCount)
+                .append(",\"isVisible\":").append(label.isVisible)
+                .append(",\"isDeleted\":").append(label.isDeleted)
+                .append(",\"shouldSync\":").append(label.shouldSync)
+                .append(",\"readOnly\":").append(label.readOnly)
+                .append(",\"contactIds\":[");
+        for (int i = 0; i < label.contactIds.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(label.contactIds.get(i));
+        }
+        builder.append("]}");
+    }
+
+    /**
+     * Writes quoted JSON string. Control characters and line/paragraph separators are escaped,
+     * so the message is also safe to evaluate as JavaScript by the bridge.
+     */
+    private static void writeString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        builder.append("\\u")
+                                .append(HEX[(c >> 12) & 0xF])
+                                .append(HEX[(c >> 8) & 0xF])
+                                .append(HEX[(c >> 4) & 0xF])
+                                .append(HEX[c & 0xF]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,100 @@
+package com.qbix.qbixcontactgrouplib;
+
+import com.qbix.qbixcontactgroupcore.LabelResolution;
+import com.qbix.qbixcontactgroupcore.LabelRow;
+import com.qbix.qbixcontactgroupcore.collections.IntBitmap;
+import com.qbix.qbixcontactgrouplib.models.AccNameGroup;
+import com.qbix.qbixcontactgrouplib.models.QbixGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable result of one full labels scan. Groups and their contactIds are shared by all
+ * readers of the snapshot, so they must not be modified after snapshot is built.
+ */
+class LabelSnapshot {
+
+    /**
+     * Merged labels in provider order (one per sourceId, one per group without sourceId).
+     */
+    final List<QbixGroup> labels;
+    private final LabelResolution resolution;
+    private final IdentityHashMap<LabelRow, AccNameGroup> groupsByRow;
+    //key - sourceId, value - members of the label, built on first query
+    private final ConcurrentHashMap<String, IntBitmap> membersBySourceId = new ConcurrentHashMap<>();
+
+    LabelSnapshot(LabelResolution resolution) {
+        this.resolution = resolution;
+        this.groupsByRow = new IdentityHashMap<>(resolution.rows.size());
+        for (LabelRow row : resolution.rows) {
+            groupsByRow.put(row, toGroup(row));
+        }
+        List<QbixGroup> mergedLabels = new ArrayList<>(resolution.labels.size());
+        for (LabelRow row : resolution.labels) {
+            mergedLabels.add(groupsByRow.get(row));
+        }
+        this.labels = Collections.unmodifiableList(mergedLabels);
+    }
+
+    /**
+     * Gets labels that have given sourceIds. For each sourceId returns group row of the first
+     * account which is still available on the device, same as
+     * {@link GroupAccessor#getLabelsBySourceId(String[])} does.
+     *
+     * @param sourceIds    Source ids which labels wanted to be returned
+     * @param accountNames Names of accounts available on the device
+     * @return list of {@link QbixGroup} POJO
+     */
+    List<QbixGroup> getLabelsBySourceId(String[] sourceIds, Set<String> accountNames) {
+        List<QbixGroup> result = new ArrayList<>();
+        for (LabelRow row : resolution.getLabelsBySourceId(sourceIds, accountNames)) {
+            result.add(groupsByRow.get(row));
+        }
+        return result;
+    }
+
+    /**
+     * Gets members of label that has given sourceId, same label as
+     * {@link #getLabelsBySourceId(String[], Set)} returns.
+     *
+     * @param sourceId     Source id of the label
+     * @param accountNames Names of accounts available on the device
+     * @return contact ids of the label, empty if there is no such label
+     */
+    IntBitmap getMembers(String sourceId, Set<String> accountNames) {
+        List<LabelRow> rows = resolution.getLabelsBySourceId(new String[]{sourceId}, accountNames);
+        if (rows.isEmpty()) {
+            return IntBitmap.EMPTY;
+        }
+        IntBitmap members = membersBySourceId.get(sourceId);
+        if (members == null) {
+            members = IntBitmap.of(rows.get(0).contactIds.toArray());
+            membersBySourceId.putIfAbsent(sourceId, members);
+        }
+        return members;
+    }
+
+    /**
+     * @param row Resolved group row
+     * @return {@link AccNameGroup} POJO sharing contactIds of the row
+     */
+    static AccNameGroup toGroup(LabelRow row) {
+        AccNameGroup group = new AccNameGroup();
+        group.sourceId = row.sourceId;
+        group.title = row.title;
+        group.accountName = row.accountName;
+        group.notes = row.notes;
+        group.summaryCount = row.summaryCount;
+        group.isVisible = row.isVisible;
+        group.isDeleted = row.isDeleted;
+        group.shouldSync = row.shouldSync;
+        group.readOnly = row.readOnly;
+        group.contactIds = row.contactIds;
+        return group;
+    }
+}
@@ -0,0 +1,159 @@
+package com.qbix.qbixcontactgrouplib;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.util.LruCache;
+
+import com.qbix.qbixcontactgrouplib.utils.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads contact photos as downscaled JPEG thumbnails. Photos are streamed from Contacts Provider
+ * file descriptors and decoded with sampling, so full resolution bitmaps are never held in memory.
+ * Encoded thumbnails are kept in LRU cache bounded by their size in bytes.
+ */
+class PhotoLoader {
+
+    static final int DEFAULT_THUMBNAIL_SIZE = 256;
+    static final int MAX_THUMBNAIL_SIZE = 1024;
+    private static final int JPEG_QUALITY = 85;
+    private static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final ContentResolver resolver;
+    //key - contact id, photo ids and thumbnail size, value - JPEG bytes of thumbnail
+    private final LruCache<String, byte[]> cache;
+
+    PhotoLoader(ContentResolver resolver) {
+        this.resolver = resolver;
+        int cacheBytes = (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 16);
+        this.cache = new LruCache<String, byte[]>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    /**
+     * Gets thumbnail of contact's photo. Cache key includes photo ids of the contact,
+     * so changed photo is never served from cache.
+     *
+     * @param contactId Id of contact
+     * @param size      Max width and height of thumbnail in pixels
+     * @return JPEG bytes of thumbnail or null if contact has no photo
+     */
+    byte[] getThumbnail(int contactId, int size) {
+        Uri contactUri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId);
+        Cursor cursor = resolver.query(contactUri,
+                new String[]{
+                        ContactsContract.Contacts.PHOTO_ID,
+                        ContactsContract.Contacts.PHOTO_FILE_ID
+                },
+                null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        String key;
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return null;
+            }
+            key = contactId + "/" + cursor.getLong(0) + "/" + cursor.getLong(1) + "/" + size;
+        } finally {
+            Metrics.recordQuery(cursor.getCount());
+            cursor.close();
+        }
+        byte[] thumbnail = cache.get(key);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        try {
+            thumbnail = decodeThumbnail(contactUri, size);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (thumbnail != null) {
+            cache.put(key, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Drops all cached thumbnails.
+     */
+    void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Reads photo twice: bounds first, then pixels with the biggest power of two sampling that
+     * keeps both sides not smaller than size. Result is scaled to fit size and encoded as JPEG.
+     */
+    private byte[] decodeThumbnail(Uri contactUri, int size) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream input = openPhoto(contactUri);
+        if (input == null) {
+            return null;
+        }
+        try {
+            BitmapFactory.decodeStream(input, null, options);
+        } finally {
+            input.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        input = openPhoto(contactUri);
+        if (input == null) {
+            return null;
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(input, null, options);
+        } finally {
+            input.close();
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width > size || height > size) {
+            float scale = Math.min((float) size / width, (float) size / height);
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output);
+        bitmap.recycle();
+        return output.toByteArray();
+    }
+
+    /**
+     * Opens display photo of contact through file descriptor, or its small thumbnail from Data row
+     * if contact has no display photo.
+     */
+    private InputStream openPhoto(Uri contactUri) {
+        return ContactsContract.Contacts.openContactPhotoInputStream(resolver, contactUri, true);
+    }
+}
@@ -0,0 +1,19 @@
+package com.qbix.qbixcontactgrouplib;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+
+/**
+ * One call of the plugin: action with its own arguments and callback context.
+ */
+class PluginRequest {
+    final String action;
+    final JSONArray args;
+    final CallbackContext callbackContext;
+
+    PluginRequest(String action, JSONArray args, CallbackContext callbackContext) {
+        this.action = action;
+        this.args = args;
+        this.callbackContext = callbackContext;
+    }
+}
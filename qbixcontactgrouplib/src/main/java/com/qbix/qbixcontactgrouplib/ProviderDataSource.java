@@ -0,0 +1,125 @@
+package com.qbix.qbixcontactgrouplib;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+import com.qbix.qbixcontactgroupcore.ContactsDataSource;
+import com.qbix.qbixcontactgroupcore.LabelRow;
+import com.qbix.qbixcontactgrouplib.utils.LabelIndex;
+import com.qbix.qbixcontactgrouplib.utils.QueryPlanner;
+import com.qbix.qbixcontactgrouplib.utils.RawContactIndex;
+
+/**
+ * {@link ContactsDataSource} backed by Contacts Provider. Filtered reads are chunked with
+ * {@link QueryPlanner}, groups of given sourceIds are read from {@link LabelIndex} and rawContacts
+ * from {@link RawContactIndex}.
+ */
+class ProviderDataSource implements ContactsDataSource {
+
+    private static final String[] GROUP_PROJECTION = new String[]{
+            ContactsContract.Groups._ID,
+            ContactsContract.Groups.SOURCE_ID,
+            ContactsContract.Groups.TITLE,
+            ContactsContract.Groups.ACCOUNT_NAME,
+            ContactsContract.Groups.ACCOUNT_TYPE,
+            ContactsContract.Groups.NOTES,
+            ContactsContract.Groups.GROUP_VISIBLE,
+            ContactsContract.Groups.DELETED,
+            ContactsContract.Groups.SHOULD_SYNC,
+            ContactsContract.Groups.GROUP_IS_READ_ONLY
+    };
+    private static final String[] MEMBERSHIP_PROJECTION = new String[]{
+            ContactsContract.Data.RAW_CONTACT_ID,
+            ContactsContract.Data.CONTACT_ID,
+            ContactsContract.Data.DATA1
+    };
+    private static final String MEMBERSHIP_SELECTION = ContactsContract.Data.MIMETYPE + "=?";
+    private static final String[] MEMBERSHIP_SELECTION_ARGS = new String[]{
+            ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE
+    };
+
+    private final ContentResolver resolver;
+    private final LabelIndex labelIndex;
+    private final RawContactIndex rawContactIndex;
+
+    ProviderDataSource(ContentResolver resolver, LabelIndex labelIndex, RawContactIndex rawContactIndex) {
+        this.resolver = resolver;
+        this.labelIndex = labelIndex;
+        this.rawContactIndex = rawContactIndex;
+    }
+
+    @Override
+    public void readGroups(String[] sourceIds, final GroupVisitor visitor) {
+        if (sourceIds != null) {
+            labelIndex.readGroups(sourceIds, visitor);
+            return;
+        }
+        QueryPlanner.RowHandler handler = new QueryPlanner.RowHandler() {
+            @Override
+            public void onRow(Cursor cursor) {
+                LabelRow row = new LabelRow();
+                row.labelId = cursor.getInt(0);
+                row.sourceId = cursor.getString(1);
+                row.title = cursor.getString(2);
+                row.accountName = cursor.getString(3);
+                row.accountType = cursor.getString(4);
+                row.notes = cursor.getString(5);
+                row.isVisible = cursor.getInt(6) == 0;
+                row.isDeleted = cursor.getInt(7) == 1;
+                row.shouldSync = cursor.getInt(8) == 1;
+                row.readOnly = cursor.getInt(9) == 1;
+                visitor.visit(row);
+            }
+        };
+        //All labels, including not visible and deleted ones. Summary counts are not read, resolver
+        //counts them from memberships it reads anyway
+        QueryPlanner.readAll(resolver.query(ContactsContract.Groups.CONTENT_URI, GROUP_PROJECTION,
+                null, null, null), handler);
+    }
+
+    @Override
+    public void readRawContacts(int[] contactIds, RawContactVisitor visitor) {
+        rawContactIndex.readRawContacts(contactIds, visitor);
+    }
+
+    @Override
+    public void readMembershipsByLabel(int[] labelIds, MembershipVisitor visitor) {
+        if (labelIds == null) {
+            QueryPlanner.readAll(resolver.query(ContactsContract.Data.CONTENT_URI, MEMBERSHIP_PROJECTION,
+                    MEMBERSHIP_SELECTION, MEMBERSHIP_SELECTION_ARGS, null), new MembershipHandler(visitor));
+        } else {
+            QueryPlanner.query(resolver, ContactsContract.Data.CONTENT_URI, MEMBERSHIP_PROJECTION,
+                    MEMBERSHIP_SELECTION, MEMBERSHIP_SELECTION_ARGS,
+                    ContactsContract.Data.DATA1, toStrings(labelIds), new MembershipHandler(visitor));
+        }
+    }
+
+    @Override
+    public void readMembershipsByRawContact(int[] rawContactIds, MembershipVisitor visitor) {
+        QueryPlanner.query(resolver, ContactsContract.Data.CONTENT_URI, MEMBERSHIP_PROJECTION,
+                MEMBERSHIP_SELECTION, MEMBERSHIP_SELECTION_ARGS,
+                ContactsContract.Data.RAW_CONTACT_ID, toStrings(rawContactIds), new MembershipHandler(visitor));
+    }
+
+    private static String[] toStrings(int[] ids) {
+        String[] strings = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            strings[i] = String.valueOf(ids[i]);
+        }
+        return strings;
+    }
+
+    private static class MembershipHandler implements QueryPlanner.RowHandler {
+        private final MembershipVisitor visitor;
+
+        MembershipHandler(MembershipVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void onRow(Cursor cursor) {
+            visitor.visit(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2));
+        }
+    }
+}
@@ -14,10 +14,21 @@ import android.Manifest;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 
+import com.qbix.qbixcontactgroupcore.LabelOperation;
+import com.qbix.qbixcontactgroupcore.LabelQuery;
+import com.qbix.qbixcontactgroupcore.collections.IntBitmap;
+import com.qbix.qbixcontactgrouplib.models.QbixContact;
 import com.qbix.qbixcontactgrouplib.models.QbixGroup;
+import com.qbix.qbixcontactgrouplib.utils.ContactHelper;
+import com.qbix.qbixcontactgrouplib.utils.KeyedSerialExecutor;
+import com.qbix.qbixcontactgrouplib.utils.Metrics;
+import com.qbix.qbixcontactgrouplib.utils.Trace;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class QUsersCordova extends CordovaPlugin {
 
@@ -27,27 +38,44 @@ public class QUsersCordova extends CordovaPlugin {
     private final String REMOVE_CONTACT_FROM_LABEL_ACTION = "removeContact";
     private final String ADD_CONTACT_TO_LABEL_ACTION = "addContact";
     private final String REMOVE_LABEL_ACTION = "remove";
+    private final String GET_CHANGES_ACTION = "getChanges";
+    private final String BATCH_UPDATE_ACTION = "batchUpdate";
+    private final String GET_CONTACTS_ACTION = "getContacts";
+    private final String GET_PHOTO_ACTION = "getPhoto";
+    private final String GET_LABELS_FOR_CONTACTS_ACTION = "getLabelsForContacts";
+    private final String CREATE_LABEL_ACTION = "create";
+    private final String RENAME_LABEL_ACTION = "rename";
+    private final String QUERY_ACTION = "query";
+    private final String GET_METRICS_ACTION = "getMetrics";
+    private final String SET_TRACING_ACTION = "setTracing";
 
     private final String READ = Manifest.permission.READ_CONTACTS;
     private final String WRITE = Manifest.permission.WRITE_CONTACTS;
     private final String ACCOUNTS = Manifest.permission.GET_ACCOUNTS;
 
-    //Request code for the permissions picker (Pick is async and uses intents)
-    private final int ALL_LABELS_REQ_CODE = 8;
-    private final int LABELS_BY_SOURCE_ID_REQ_CODE = 9;
-    private final int REMOVE_CONTACT_FROM_LABEL_REQ_CODE = 10;
-    private final int ADD_CONTACT_TO_LABEL_REQ_CODE = 11;
-    private final int REMOVE_LABEL_REQ_CODE = 12;
+    //First request code for the permissions picker, every permission request gets its own code
+    private final int FIRST_PERMISSION_REQ_CODE = 8;
 
     //Error codes for returning with error plugin result
     protected static final String UNKNOWN_ERROR = "unknown error";
     protected static final String SUCCESS = "success";
     protected static final String NOT_SUPPORTED_ERROR = "not supported error";
     protected static final String PERMISSION_DENIED_ERROR = "permission denied error";
+    protected static final String NO_PHOTO_ERROR = "no photo error";
+    protected static final String NO_ACCOUNTS_ERROR = "no accounts error";
+    protected static final String LABEL_NOT_FOUND_ERROR = "label not found error";
+    protected static final String READ_ONLY_LABEL_ERROR = "read only label error";
+    protected static final String TOO_MANY_OPERATIONS_ERROR = "too many operations error";
+    protected static final String PARTIALLY_APPLIED_ERROR = "partially applied error";
 
-    private JSONArray executeArgs;
-    private GroupAccessor groupAccessor;
-    private CallbackContext callbackContext;   // The callback context from which we were invoked.
+    private volatile GroupAccessor groupAccessor;
+    //Writes of the same label run one by one, in the order they were called
+    private KeyedSerialExecutor writeExecutor;
+    //Identical label reads running at the same time share one provider scan
+    private ReadCoalescer readCoalescer;
+    //key - permission request code, value - request waiting for that permission
+    private final ConcurrentHashMap<Integer, PluginRequest> permissionRequests = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPermissionReqCode = new AtomicInteger(FIRST_PERMISSION_REQ_CODE);
 
     /**
      * Constructor.
@@ -55,20 +83,10 @@ public class QUsersCordova extends CordovaPlugin {
     public QUsersCordova() {
     }
 
-    private void getReadPermission(int requestCode) {
-        PermissionHelper.requestPermission(this, requestCode, READ);
-    }
-
-    private void getWritePermission(int requestCode) {
-        PermissionHelper.requestPermission(this, requestCode, WRITE);
-    }
-
-    private void getAccountPermission(int requestCode) {
-        PermissionHelper.requestPermission(this, requestCode, ACCOUNTS);
-    }
-
     /**
      * Executes the request and returns PluginResult.
+     * Every request keeps its own arguments and callback context, so requests can run concurrently:
+     * reads run in parallel on Cordova thread pool, writes are ordered per label.
      *
      * @param action          The action to execute.
      * @param args            JSONArray of arguments for the plugin.
@@ -76,9 +94,6 @@ public class QUsersCordova extends CordovaPlugin {
      * @return True if the action was valid, false otherwise.
      */
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
-
-        QUsersCordova.this.callbackContext = callbackContext;
-        this.executeArgs = args;
         /**
          * Check to see if we are on an Android 1.X device.  If we are return an error as we
          * do not support this as of Cordova 1.0.
@@ -88,96 +103,307 @@ public class QUsersCordova extends CordovaPlugin {
             return true;
         }
 
+        if (action.equals(GET_METRICS_ACTION)) {
+            getMetrics(args, callbackContext);
+            return true;
+        } else if (action.equals(SET_TRACING_ACTION)) {
+            setTracing(args, callbackContext);
+            return true;
+        }
+
+        String permission = getRequiredPermission(action);
+        if (permission == null) {
+            return false;
+        }
+
         /**
          * Only create the groupAccessor after we check the Android version or the program will crash
          * older phones.
          */
-        if (this.groupAccessor == null) {
-            this.groupAccessor = new GroupAccessor(this.cordova);
+        synchronized (this) {
+            if (this.groupAccessor == null) {
+                this.groupAccessor = new GroupAccessor(this.cordova);
+            }
+            if (this.writeExecutor == null) {
+                this.writeExecutor = new KeyedSerialExecutor(this.cordova.getThreadPool());
+            }
+            if (this.readCoalescer == null) {
+                this.readCoalescer = new ReadCoalescer(this.cordova.getThreadPool());
+            }
         }
 
-        if (action.equals(GET_ALL_LABELS_ACTION)) {
-            if (PermissionHelper.hasPermission(this, READ)) {
-                getLabels();
-            } else {
-                getReadPermission(ALL_LABELS_REQ_CODE);
+        PluginRequest request = new PluginRequest(action, args, callbackContext);
+        if (PermissionHelper.hasPermission(this, permission)) {
+            dispatch(request);
+        } else {
+            int requestCode = nextPermissionReqCode.getAndIncrement();
+            permissionRequests.put(requestCode, request);
+            PermissionHelper.requestPermission(this, requestCode, permission);
+        }
+        return true;
+    }
+
+    /**
+     * @param action The action to execute
+     * @return permission needed for action or null if action is not supported
+     */
+    private String getRequiredPermission(String action) {
+        if (action.equals(GET_ALL_LABELS_ACTION)
+                || action.equals(GET_ONE_OR_MORE_LABELS_ACTION)
+                || action.equals(GET_CHANGES_ACTION)
+                || action.equals(GET_CONTACTS_ACTION)
+                || action.equals(GET_PHOTO_ACTION)
+                || action.equals(GET_LABELS_FOR_CONTACTS_ACTION)
+                || action.equals(QUERY_ACTION)) {
+            return READ;
+        } else if (action.equals(REMOVE_CONTACT_FROM_LABEL_ACTION)
+                || action.equals(ADD_CONTACT_TO_LABEL_ACTION)
+                || action.equals(BATCH_UPDATE_ACTION)
+                || action.equals(CREATE_LABEL_ACTION)
+                || action.equals(RENAME_LABEL_ACTION)) {
+            return WRITE;
+        } else if (action.equals(REMOVE_LABEL_ACTION)) {
+            return ACCOUNTS;
+        }
+        return null;
+    }
+
+    /**
+     * Runs request in background. Writes are queued by sourceIds of labels they change,
+     * identical label reads are coalesced (only while no write is applied in between).
+     *
+     * @param request Request which permission is granted
+     */
+    private void dispatch(final PluginRequest request) {
+        final long start = System.nanoTime();
+        if (isCoalescable(request)) {
+            readCoalescer.execute(request.action + request.args, groupAccessor.getWriteGeneration(),
+                    request.callbackContext,
+                    new ReadCoalescer.Computation() {
+                        @Override
+                        public PluginResult compute() {
+                            Trace.Span span = Trace.beginRoot(request.action);
+                            try {
+                                if (request.action.equals(GET_ALL_LABELS_ACTION)) {
+                                    return getLabelsResult(isBinary(request.args));
+                                } else if (request.action.equals(GET_CONTACTS_ACTION)) {
+                                    return getContactsResult(request.args);
+                                } else if (request.action.equals(GET_PHOTO_ACTION)) {
+                                    return getPhotoResult(request.args);
+                                } else if (request.action.equals(GET_LABELS_FOR_CONTACTS_ACTION)) {
+                                    return getLabelsForContactsResult(request.args);
+                                } else if (request.action.equals(QUERY_ACTION)) {
+                                    return getQueryResult(request.args);
+                                }
+                                return getLabelsResult(request.args);
+                            } finally {
+                                Trace.end(span);
+                                Metrics.recordAction(request.action, start);
+                            }
+                        }
+                    });
+            return;
+        }
+        Runnable task = new Runnable() {
+            public void run() {
+                Trace.Span span = Trace.beginRoot(request.action);
+                try {
+                    runRequest(request);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    request.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+                } finally {
+                    Trace.end(span);
+                    Metrics.recordAction(request.action, start);
+                }
             }
+        };
+        if (getRequiredPermission(request.action).equals(READ)) {
+            this.cordova.getThreadPool().execute(task);
+        } else {
+            writeExecutor.execute(getLabelKeys(request.args), task);
+        }
+    }
 
+    /**
+     * @param request Request to check
+     * @return true if request sends one result which depends only on its action and arguments
+     * ("getAll" without paging, "get", "getContacts", "getPhoto", "getLabelsForContacts" and "query")
+     */
+    private boolean isCoalescable(PluginRequest request) {
+        if (request.action.equals(GET_ONE_OR_MORE_LABELS_ACTION)
+                || request.action.equals(GET_CONTACTS_ACTION)
+                || request.action.equals(GET_PHOTO_ACTION)
+                || request.action.equals(GET_LABELS_FOR_CONTACTS_ACTION)
+                || request.action.equals(QUERY_ACTION)) {
             return true;
-        }else if(action.equals(GET_ONE_OR_MORE_LABELS_ACTION)){
-            if (PermissionHelper.hasPermission(this, READ)) {
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {
-                            getLabels(executeArgs);
-                    }
-                });
-            } else {
-                getReadPermission(LABELS_BY_SOURCE_ID_REQ_CODE);
-            }
+        }
+        return request.action.equals(GET_ALL_LABELS_ACTION) && getPageSize(request.args) <= 0;
+    }
+
+    /**
+     * @param args Arguments of "getAll" action
+     * @return "pageSize" option or 0 if it is not given
+     */
+    private int getPageSize(JSONArray args) {
+        JSONObject options = args == null ? null : args.optJSONObject(0);
+        return options == null ? 0 : options.optInt("pageSize", 0);
+    }
+
+    /**
+     * @param args Arguments of "getAll" action
+     * @return true if "encoding" option asks for {@link BinaryLabelEncoder} result
+     */
+    private boolean isBinary(JSONArray args) {
+        JSONObject options = args == null ? null : args.optJSONObject(0);
+        return options != null && BinaryLabelEncoder.ENCODING.equals(options.optString("encoding"));
+    }
+
+    /**
+     * Runs action of request on current thread.
+     *
+     * @param request Request to run
+     */
+    private void runRequest(PluginRequest request) {
+        String action = request.action;
+        JSONArray args = request.args;
+        CallbackContext callbackContext = request.callbackContext;
+        if (action.equals(GET_ALL_LABELS_ACTION)) {
+            getAllLabels(args, callbackContext);
+        } else if (action.equals(GET_ONE_OR_MORE_LABELS_ACTION)) {
+            callbackContext.sendPluginResult(getLabelsResult(args));
         } else if (action.equals(REMOVE_CONTACT_FROM_LABEL_ACTION)) {
-            if (PermissionHelper.hasPermission(this, WRITE)) {
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {
-                        removeContactFromLabel(executeArgs);
-                    }
-                });
-            } else {
-                getWritePermission(REMOVE_CONTACT_FROM_LABEL_REQ_CODE);
-            }
-            return true;
+            removeContactFromLabel(args, callbackContext);
         } else if (action.equals(ADD_CONTACT_TO_LABEL_ACTION)) {
-            if (PermissionHelper.hasPermission(this, WRITE)) {
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {                  
-                            addContactToLabel(executeArgs);
-                    }
-                });
-            } else {
-                getWritePermission(ADD_CONTACT_TO_LABEL_REQ_CODE);
-            }
-            return true;
+            addContactToLabel(args, callbackContext);
         } else if (action.equals(REMOVE_LABEL_ACTION)) {
-            if (PermissionHelper.hasPermission(this, ACCOUNTS)) {
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {
-                        removeLabelFromDatabase(executeArgs);
-                    }
-                });
-            } else {
-                getAccountPermission(REMOVE_LABEL_REQ_CODE);
+            removeLabelFromDatabase(args, callbackContext);
+        } else if (action.equals(GET_CHANGES_ACTION)) {
+            getChanges(args, callbackContext);
+        } else if (action.equals(BATCH_UPDATE_ACTION)) {
+            batchUpdate(args, callbackContext);
+        } else if (action.equals(GET_CONTACTS_ACTION)) {
+            callbackContext.sendPluginResult(getContactsResult(args));
+        } else if (action.equals(GET_PHOTO_ACTION)) {
+            callbackContext.sendPluginResult(getPhotoResult(args));
+        } else if (action.equals(GET_LABELS_FOR_CONTACTS_ACTION)) {
+            callbackContext.sendPluginResult(getLabelsForContactsResult(args));
+        } else if (action.equals(QUERY_ACTION)) {
+            callbackContext.sendPluginResult(getQueryResult(args));
+        } else if (action.equals(CREATE_LABEL_ACTION)) {
+            createLabel(args, callbackContext);
+        } else if (action.equals(RENAME_LABEL_ACTION)) {
+            renameLabel(args, callbackContext);
+        }
+    }
+
+    /**
+     * Gets sourceIds of labels which write request changes ("labelId" of first argument or of
+     * every operation in "operations").
+     *
+     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @return sourceIds (empty if arguments are malformed, request will report the error itself)
+     */
+    private List<String> getLabelKeys(JSONArray args) {
+        List<String> keys = new ArrayList<>();
+        JSONObject filter = args == null ? null : args.optJSONObject(0);
+        if (filter == null) {
+            return keys;
+        }
+        String labelId = filter.optString("labelId", null);
+        if (labelId != null) {
+            keys.add(labelId);
+        }
+        JSONArray operations = filter.optJSONArray("operations");
+        for (int i = 0; operations != null && i < operations.length(); i++) {
+            JSONObject operation = operations.optJSONObject(i);
+            String operationLabelId = operation == null ? null : operation.optString("labelId", null);
+            if (operationLabelId != null) {
+                keys.add(operationLabelId);
             }
-            return true;
         }
-        return false;
+        return keys;
     }
 
     /**
-     * Gets all labels asynchronously and set result to callback context's as success.
+     * Gets all labels. If "pageSize" argument is given, labels are sent in pages
+     * (see {@link #streamLabels(int, boolean, CallbackContext)}), otherwise with one success result.
+     * If "encoding" argument is "binary", every result is encoded with {@link BinaryLabelEncoder}.
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
      */
-    private void getLabels() {
-        this.cordova.getThreadPool().execute(new Runnable() {
-            public void run() {
-                List<QbixGroup> labels = groupAccessor.getAllLabels();
-                JSONArray jsonGroups = new JSONArray();
-                for (QbixGroup group :
-                        labels) {
-                    jsonGroups.put(group.toJson());
-                }
-                if (labels != null) {
-                    callbackContext.success(jsonGroups);
+    private void getAllLabels(JSONArray args, CallbackContext callbackContext) {
+        int pageSize = getPageSize(args);
+        if (pageSize > 0) {
+            streamLabels(pageSize, isBinary(args), callbackContext);
+        } else {
+            callbackContext.sendPluginResult(getLabelsResult(isBinary(args)));
+        }
+    }
+
+    /**
+     * Gets all labels and sends them in pages as soon as every page is assembled.
+     * Every page is a JSONObject with "labels", "page" (index) and "done" (true for the last page).
+     * Callback is kept till the last page.
+     *
+     * @param pageSize        Max count of labels in one page
+     * @param binary          True if pages must be encoded with {@link BinaryLabelEncoder}
+     * @param callbackContext The callback context of the request
+     */
+    private void streamLabels(int pageSize, final boolean binary, final CallbackContext callbackContext) {
+        groupAccessor.streamAllLabels(pageSize, new GroupAccessor.LabelPageListener() {
+            private int pageIndex;
+
+            @Override
+            public void onPage(List<QbixGroup> labels, boolean last) {
+                PluginResult result;
+                if (binary) {
+                    JSONObject page = new JSONObject();
+                    try {
+                        page.put("page", pageIndex++);
+                        page.put("done", last);
+                        result = BinaryLabelEncoder.encode(labels, page);
+                    } catch (JSONException e) {
+                        throw new RuntimeException(e);
+                    }
                 } else {
-                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+                    result = new LabelJsonWriter.JsonResult(LabelJsonWriter.writePage(labels, pageIndex++, last));
                 }
+                result.setKeepCallback(!last);
+                callbackContext.sendPluginResult(result);
             }
         });
     }
 
     /**
-     * Gets all labels that have given sourceIds and set result to callback context's as success.
+     * Gets all labels.
+     *
+     * @param binary True if labels must be encoded with {@link BinaryLabelEncoder}
+     * @return Success result with labels or error result
+     */
+    private PluginResult getLabelsResult(boolean binary) {
+        List<QbixGroup> labels = groupAccessor.getAllLabels();
+        if (labels != null && binary) {
+            try {
+                return BinaryLabelEncoder.encode(labels, new JSONObject());
+            } catch (JSONException e) {
+                return new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+            }
+        } else if (labels != null) {
+            return new LabelJsonWriter.JsonResult(LabelJsonWriter.writeLabels(labels));
+        } else {
+            return new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR);
+        }
+    }
+
+    /**
+     * Gets all labels that have given sourceIds.
      *
      * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @return Success result with labels or error result
      */
-    private void getLabels(JSONArray args) {
+    private PluginResult getLabelsResult(JSONArray args) {
         try {
             List<String> sourceIdList = new ArrayList<>();
             for (int i = 0; i < args.length(); i++) {
@@ -190,16 +416,213 @@ public class QUsersCordova extends CordovaPlugin {
                 sourceIdArray[i]=sourceIdList.get(i);
             }
             List<QbixGroup> labels = groupAccessor.getLabelsBySourceId(sourceIdArray);
-            JSONArray jsonGroups = new JSONArray();
-            for (QbixGroup group :
-                    labels) {
-                jsonGroups.put(group.toJson());
-            }
             if (labels != null) {
-                callbackContext.success(jsonGroups);
+                return new LabelJsonWriter.JsonResult(LabelJsonWriter.writeLabels(labels));
             } else {
-                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+                return new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR);
+            }
+        } catch (JSONException e) {
+            return new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Gets members of labels with sourceIds given in "labelIds" argument. "fields" argument
+     * (keys of {@link ContactHelper#MIME_TYPES_BY_FIELD}) chooses which data of contacts is read,
+     * all of it if there is no "fields". Every member is returned, fields it has no data for are empty.
+     *
+     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @return Success result with contacts or error result
+     */
+    private PluginResult getContactsResult(JSONArray args) {
+        try {
+            JSONObject filter = args.getJSONObject(0);
+            JSONArray labelIds = filter.getJSONArray("labelIds");
+            String[] sourceIdArray = new String[labelIds.length()];
+            for (int i = 0; i < labelIds.length(); i++) {
+                sourceIdArray[i] = labelIds.getString(i);
+            }
+            List<String> mimeTypes = new ArrayList<>();
+            JSONArray fields = filter.optJSONArray("fields");
+            if (fields == null) {
+                mimeTypes.addAll(ContactHelper.MIME_TYPES_BY_FIELD.values());
+            } else {
+                for (int i = 0; i < fields.length(); i++) {
+                    String mimeType = ContactHelper.MIME_TYPES_BY_FIELD.get(fields.getString(i));
+                    if (mimeType == null) {
+                        return new PluginResult(PluginResult.Status.ERROR, "unknown field: " + fields.getString(i));
+                    }
+                    mimeTypes.add(mimeType);
+                }
+            }
+            List<QbixContact> contacts = groupAccessor.getContactsBySourceId(sourceIdArray, mimeTypes);
+            JSONArray jsonContacts = new JSONArray();
+            for (QbixContact contact : contacts) {
+                jsonContacts.put(contact.toJson());
+            }
+            return new PluginResult(PluginResult.Status.OK, jsonContacts);
+        } catch (JSONException e) {
+            return new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Gets photo of contact with "contactId" argument as JPEG ArrayBuffer, downscaled to fit
+     * "size" argument (pixels, {@link PhotoLoader#DEFAULT_THUMBNAIL_SIZE} if it is not given).
+     *
+     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @return Success result with photo bytes or error result
+     */
+    private PluginResult getPhotoResult(JSONArray args) {
+        try {
+            JSONObject filter = args.getJSONObject(0);
+            int contactId = filter.getInt("contactId");
+            int size = filter.optInt("size", PhotoLoader.DEFAULT_THUMBNAIL_SIZE);
+            if (size <= 0 || size > PhotoLoader.MAX_THUMBNAIL_SIZE) {
+                return new PluginResult(PluginResult.Status.ERROR, "size must be from 1 to " + PhotoLoader.MAX_THUMBNAIL_SIZE);
+            }
+            byte[] photo = groupAccessor.getPhoto(contactId, size);
+            if (photo == null) {
+                return new PluginResult(PluginResult.Status.ERROR, NO_PHOTO_ERROR);
+            }
+            return new PluginResult(PluginResult.Status.OK, photo);
+        } catch (JSONException e) {
+            return new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Gets sourceIds of labels of every contact given in "contactIds" argument
+     * (e.g. [{contactIds: ["12", "15"]}] gives {"12": ["sourceId1"], "15": []}).
+     *
+     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @return Success result with sourceIds by contactId or error result
+     */
+    private PluginResult getLabelsForContactsResult(JSONArray args) {
+        try {
+            JSONArray contactIds = args.getJSONObject(0).getJSONArray("contactIds");
+            int[] idArray = new int[contactIds.length()];
+            for (int i = 0; i < contactIds.length(); i++) {
+                idArray[i] = contactIds.getInt(i);
+            }
+            List<List<String>> sourceIds = groupAccessor.getLabelsForContacts(idArray);
+            JSONObject result = new JSONObject();
+            for (int i = 0; i < idArray.length; i++) {
+                result.put(String.valueOf(idArray[i]), new JSONArray(sourceIds.get(i)));
+            }
+            return new PluginResult(PluginResult.Status.OK, result);
+        } catch (JSONException e) {
+            return new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Evaluates set expression over labels natively, so member lists do not cross the bridge
+     * (e.g. [{expression: {difference: [{intersection: [{label: "A"}, {label: "B"}]}, {label: "C"}]}}]).
+     * Expression is {label: sourceId}, {union: [...]}, {intersection: [...]} or {difference: [...]}
+     * (first operand without members of the others). Result is {count: n, contactIds: [...]},
+     * without contactIds if "countOnly" is true.
+     *
+     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @return plugin result
+     */
+    private PluginResult getQueryResult(JSONArray args) {
+        try {
+            JSONObject filter = args.getJSONObject(0);
+            IntBitmap contactIds = groupAccessor.queryLabels(parseQuery(filter.getJSONObject("expression")));
+            JSONObject result = new JSONObject();
+            result.put("count", contactIds.cardinality());
+            if (!filter.optBoolean("countOnly", false)) {
+                JSONArray ids = new JSONArray();
+                for (int contactId : contactIds.toArray()) {
+                    ids.put(contactId);
+                }
+                result.put("contactIds", ids);
+            }
+            return new PluginResult(PluginResult.Status.OK, result);
+        } catch (JSONException e) {
+            return new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+        }
+    }
+
+    /**
+     * @param expression Expression of "query" action
+     * @return parsed expression
+     */
+    private LabelQuery parseQuery(JSONObject expression) throws JSONException {
+        if (expression.has("label")) {
+            return LabelQuery.label(expression.getString("label"));
+        }
+        LabelQuery.Operator operator;
+        JSONArray operands;
+        if (expression.has("union")) {
+            operator = LabelQuery.Operator.UNION;
+            operands = expression.getJSONArray("union");
+        } else if (expression.has("intersection")) {
+            operator = LabelQuery.Operator.INTERSECTION;
+            operands = expression.getJSONArray("intersection");
+        } else if (expression.has("difference")) {
+            operator = LabelQuery.Operator.DIFFERENCE;
+            operands = expression.getJSONArray("difference");
+            if (operands.length() == 0) {
+                throw new JSONException("difference needs at least one operand");
             }
+        } else {
+            throw new JSONException("unknown expression: " + expression);
+        }
+        List<LabelQuery> queries = new ArrayList<>(operands.length());
+        for (int i = 0; i < operands.length(); i++) {
+            queries.add(parseQuery(operands.getJSONObject(i)));
+        }
+        return LabelQuery.of(operator, queries);
+    }
+
+    /**
+     * Gets performance metrics of the plugin (see {@link Metrics#getMetrics(boolean)}).
+     * Needs no permission, so it is answered right away on the calling thread.
+     * If "reset" argument is true, metrics are cleared after they are read.
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
+     */
+    private void getMetrics(JSONArray args, CallbackContext callbackContext) {
+        JSONObject options = args == null ? null : args.optJSONObject(0);
+        try {
+            callbackContext.success(Metrics.getMetrics(options != null && options.optBoolean("reset", false)));
+        } catch (JSONException e) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+        }
+    }
+
+    /**
+     * Switches tracing of actions on or off (see {@link Trace}). Spans are written to logcat.
+     * Arguments: "enabled" and "sampleRate" (share of actions to trace, 1 if it is not given).
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
+     */
+    private void setTracing(JSONArray args, CallbackContext callbackContext) {
+        JSONObject options = args == null ? null : args.optJSONObject(0);
+        if (options != null && options.optBoolean("enabled", false)) {
+            Trace.enable(options.optDouble("sampleRate", 1), Trace.LOGCAT_SINK);
+        } else {
+            Trace.disable();
+        }
+        callbackContext.success();
+    }
+
+    /**
+     * Gets labels and memberships changed since version token given in arguments
+     * (all of them if there is no token) and set result to callback context's as success.
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
+     */
+    private void getChanges(JSONArray args, CallbackContext callbackContext) {
+        try {
+            JSONObject filter = args.optJSONObject(0);
+            String token = filter == null || filter.isNull("token") ? null : filter.optString("token", null);
+            callbackContext.success(groupAccessor.getChanges(token));
         } catch (JSONException e) {
             callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
         }
@@ -208,9 +631,10 @@ public class QUsersCordova extends CordovaPlugin {
     /**
      * Removes contacts from given label
      *
-     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
      */
-    private void removeContactFromLabel(JSONArray args) {
+    private void removeContactFromLabel(JSONArray args, CallbackContext callbackContext) {
         try {
             final JSONObject filter = args.getJSONObject(0);
             final String labelId = filter.getString("labelId");
@@ -234,9 +658,10 @@ public class QUsersCordova extends CordovaPlugin {
     /**
      * Adds label to given contacts
      *
-     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
      */
-    private void addContactToLabel(JSONArray args) {
+    private void addContactToLabel(JSONArray args, CallbackContext callbackContext) {
         try {
             final JSONObject filter = args.getJSONObject(0);
             final String labelId = filter.getString("labelId");
@@ -259,12 +684,119 @@ public class QUsersCordova extends CordovaPlugin {
         }
     }
 
+    /**
+     * Applies list of add/remove operations over one or more labels
+     * (e.g. [{operations: [{operation: "add", labelId: "...", contactIds: [{contactId: "..."}]}]}]).
+     * Large updates are not atomic: membership changes are written in several batches (see
+     * {@link GroupAccessor#updateLabels(List)}). If a batch fails after earlier ones were written,
+     * error is {@link #PARTIALLY_APPLIED_ERROR} with count of applied changes, and those changes stay.
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
+     */
+    private void batchUpdate(JSONArray args, CallbackContext callbackContext) {
+        try {
+            final JSONObject filter = args.getJSONObject(0);
+            final JSONArray operationsJson = filter.getJSONArray("operations");
+            List<LabelOperation> operations = new ArrayList<>();
+            for (int i = 0; i < operationsJson.length(); i++) {
+                JSONObject operationJson = operationsJson.getJSONObject(i);
+                String operation = operationJson.getString("operation");
+                if (!operation.equals("add") && !operation.equals("remove")) {
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "unknown operation: " + operation));
+                    return;
+                }
+                JSONArray contactIds = operationJson.getJSONArray("contactIds");
+                String[] idArray = new String[contactIds.length()];
+                for (int j = 0; j < contactIds.length(); j++) {
+                    JSONObject row = contactIds.getJSONObject(j);
+                    idArray[j] = row.getString("contactId");
+                }
+                operations.add(new LabelOperation(operation.equals("add"), operationJson.getString("labelId"), idArray));
+            }
+            String updateMessage = groupAccessor.updateLabels(operations);
+            if (updateMessage.equals(SUCCESS)) {
+                callbackContext.success();
+            } else {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, updateMessage));
+            }
+        } catch (JSONException e) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+        }
+    }
+
+    /**
+     * Creates label in given accounts (all syncable accounts if there is no "accounts" argument)
+     * and adds given contacts to it, with one atomic batch
+     * (e.g. [{title: "...", notes: "...", accounts: ["name"], contactIds: [{contactId: "..."}]}]).
+     * Success result has "labelId" (sourceId) of the new label. Label is written atomically, so one
+     * request can add at most {@link GroupAccessor#MAX_OPERATIONS_PER_YIELD_POINT} rows (a group per
+     * account and a membership per rawContact of given contacts); bigger requests fail with
+     * {@link #TOO_MANY_OPERATIONS_ERROR}, contacts can be added afterwards with "addContact".
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
+     */
+    private void createLabel(JSONArray args, CallbackContext callbackContext) {
+        try {
+            final JSONObject filter = args.getJSONObject(0);
+            final String title = filter.getString("title");
+            final String notes = filter.isNull("notes") ? null : filter.optString("notes", null);
+            List<String> accountNames = null;
+            JSONArray accountsJson = filter.optJSONArray("accounts");
+            if (accountsJson != null) {
+                accountNames = new ArrayList<>();
+                for (int i = 0; i < accountsJson.length(); i++) {
+                    accountNames.add(accountsJson.getString(i));
+                }
+            }
+            JSONArray contactIds = filter.optJSONArray("contactIds");
+            int[] idArray = new int[contactIds == null ? 0 : contactIds.length()];
+            for (int i = 0; i < idArray.length; i++) {
+                idArray[i] = contactIds.getJSONObject(i).getInt("contactId");
+            }
+            String sourceId = UUID.randomUUID().toString();
+            String createMessage = groupAccessor.createLabel(sourceId, title, notes,
+                    groupAccessor.getAccounts(accountNames), idArray);
+            if (createMessage.equals(SUCCESS)) {
+                JSONObject result = new JSONObject();
+                result.put("labelId", sourceId);
+                callbackContext.success(result);
+            } else {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, createMessage));
+            }
+        } catch (JSONException e) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+        }
+    }
+
+    /**
+     * Renames label in every account (e.g. [{labelId: "...", title: "..."}]).
+     *
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
+     */
+    private void renameLabel(JSONArray args, CallbackContext callbackContext) {
+        try {
+            final JSONObject filter = args.getJSONObject(0);
+            String renameMessage = groupAccessor.renameLabel(filter.getString("labelId"), filter.getString("title"));
+            if (renameMessage.equals(SUCCESS)) {
+                callbackContext.success();
+            } else {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, renameMessage));
+            }
+        } catch (JSONException e) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+        }
+    }
+
     /**
      * Removes all labels with given sourceId.
      *
-     * @param args Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param args            Arguments from {@link #execute(String, JSONArray, CallbackContext)} method
+     * @param callbackContext The callback context of the request
      */
-    private void removeLabelFromDatabase(JSONArray args) {
+    private void removeLabelFromDatabase(JSONArray args, CallbackContext callbackContext) {
         try {
             final JSONObject filter = args.getJSONObject(0);
             final String sourceId = filter.getString("labelId");
@@ -282,38 +814,17 @@ public class QUsersCordova extends CordovaPlugin {
 
     public void onRequestPermissionResult(int requestCode, String[] permissions,
                                           int[] grantResults) {
+        PluginRequest request = permissionRequests.remove(requestCode);
+        if (request == null) {
+            return;
+        }
         for (int r : grantResults) {
             if (r == PackageManager.PERMISSION_DENIED) {
-                QUsersCordova.this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, PERMISSION_DENIED_ERROR));
+                request.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, PERMISSION_DENIED_ERROR));
                 return;
             }
         }
-        switch (requestCode) {
-            case ALL_LABELS_REQ_CODE:
-                getLabels();
-                break;
-            case REMOVE_CONTACT_FROM_LABEL_REQ_CODE:
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {
-                            removeContactFromLabel(executeArgs);
-                    }
-                });
-                break;
-            case REMOVE_LABEL_REQ_CODE:
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {
-                        removeLabelFromDatabase(executeArgs);
-                    }
-                });
-                break;
-            case LABELS_BY_SOURCE_ID_REQ_CODE:
-                this.cordova.getThreadPool().execute(new Runnable() {
-                    public void run() {
-                            getLabels(executeArgs);
-                    }
-                });
-                break;
-        }
+        dispatch(request);
     }
 
     /**
@@ -323,7 +834,20 @@ public class QUsersCordova extends CordovaPlugin {
      * because picking a contact doesn't take in any arguments.
      */
     public void onRestoreStateForActivityResult(Bundle state, CallbackContext callbackContext) {
-        QUsersCordova.this.callbackContext = callbackContext;
+        if (this.groupAccessor != null) {
+            this.groupAccessor.release();
+        }
         this.groupAccessor = new GroupAccessor(this.cordova);
     }
+
+    /**
+     * Releases labels cache and its Contacts Provider observer.
+     */
+    @Override
+    public void onDestroy() {
+        if (this.groupAccessor != null) {
+            this.groupAccessor.release();
+            this.groupAccessor = null;
+        }
+    }
 }
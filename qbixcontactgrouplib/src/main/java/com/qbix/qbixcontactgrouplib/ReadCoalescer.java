@@ -0,0 +1,76 @@
+package com.qbix.qbixcontactgrouplib;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Attaches identical read requests to one in-flight computation. The first request with a key
+ * runs the computation, requests with the same key arriving before it completes just wait for
+ * its result. Nothing is cached: after the result is sent, next request with that key computes again.
+ * Request never attaches to a computation started before a write that finished before the request
+ * arrived: computations are keyed by write generation too, so reads issued after a write see it.
+ */
+class ReadCoalescer {
+
+    interface Computation {
+        /**
+         * @return Result to send to every request attached to the computation
+         */
+        PluginResult compute();
+    }
+
+    private final Executor executor;
+    //key - write generation and request key (action and arguments),
+    //value - callbacks waiting for the in-flight computation
+    private final HashMap<String, List<CallbackContext>> inFlight = new HashMap<>();
+
+    ReadCoalescer(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs computation for the key on executor or attaches callback to the one already running.
+     *
+     * @param key             Key of the request, requests with equal keys must have equal results
+     * @param writeGeneration Generation of writes when request arrived, it changes after every write
+     * @param callbackContext Callback context of the request
+     * @param computation     Computation to run if there is no in-flight one for the key
+     */
+    void execute(String key, int writeGeneration, CallbackContext callbackContext,
+                 final Computation computation) {
+        final String inFlightKey = writeGeneration + ":" + key;
+        synchronized (inFlight) {
+            List<CallbackContext> waiting = inFlight.get(inFlightKey);
+            if (waiting != null) {
+                waiting.add(callbackContext);
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(callbackContext);
+            inFlight.put(inFlightKey, waiting);
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                PluginResult result;
+                try {
+                    result = computation.compute();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    result = new PluginResult(PluginResult.Status.ERROR, QUsersCordova.UNKNOWN_ERROR);
+                }
+                List<CallbackContext> waiting;
+                synchronized (inFlight) {
+                    waiting = inFlight.remove(inFlightKey);
+                }
+                for (CallbackContext callback : waiting) {
+                    callback.sendPluginResult(result);
+                }
+            }
+        });
+    }
+}
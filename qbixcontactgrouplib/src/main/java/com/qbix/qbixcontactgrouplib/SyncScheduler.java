@@ -0,0 +1,103 @@
+package com.qbix.qbixcontactgrouplib;
+
+import android.accounts.Account;
+import android.content.ContentResolver;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+
+import org.apache.cordova.CordovaInterface;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Requests Contacts Provider sync of accounts changed by the plugin. Requests are debounced:
+ * accounts requested within {@link #SYNC_DELAY_MS} of each other are synced together, once per
+ * account, and a burst never postpones sync longer than {@link #MAX_SYNC_DELAY_MS}.
+ */
+class SyncScheduler {
+
+    /**
+     * Delay after last request before pending accounts are synced.
+     */
+    private static final long SYNC_DELAY_MS = 1000;
+    /**
+     * Max delay after first request of a burst.
+     */
+    private static final long MAX_SYNC_DELAY_MS = 5000;
+
+    private final CordovaInterface app;
+    private final AccountRegistry accountRegistry;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    //Accounts waiting for sync, guarded by itself
+    private final LinkedHashSet<Account> pending = new LinkedHashSet<>();
+    //Uptime of first request of the current burst, 0 if nothing is pending
+    private long burstStart;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    SyncScheduler(CordovaInterface app, AccountRegistry accountRegistry) {
+        this.app = app;
+        this.accountRegistry = accountRegistry;
+    }
+
+    /**
+     * Schedules sync of given accounts.
+     *
+     * @param accounts Accounts which data was changed
+     */
+    void requestSync(Collection<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        synchronized (pending) {
+            pending.addAll(accounts);
+            if (burstStart == 0) {
+                burstStart = now;
+            }
+            handler.removeCallbacks(flush);
+            handler.postAtTime(flush, Math.min(now + SYNC_DELAY_MS, burstStart + MAX_SYNC_DELAY_MS));
+        }
+    }
+
+    /**
+     * Requests sync of all pending accounts right away.
+     */
+    void flush() {
+        final List<Account> accounts;
+        synchronized (pending) {
+            handler.removeCallbacks(flush);
+            if (pending.isEmpty()) {
+                return;
+            }
+            accounts = new ArrayList<>(pending);
+            pending.clear();
+            burstStart = 0;
+        }
+        app.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Account account : accounts) {
+                    if (accountRegistry.isSyncable(account)) {
+                        Bundle bundle = new Bundle();
+                        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+                        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_OVERRIDE_TOO_MANY_DELETIONS, true);
+                        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+                        ContentResolver.requestSync(account, ContactsContract.AUTHORITY, bundle);
+                    }
+                }
+            }
+        });
+    }
+}
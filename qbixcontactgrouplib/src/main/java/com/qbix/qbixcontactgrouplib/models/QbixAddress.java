@@ -1,5 +1,7 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixAddress {
 
     /**
@@ -11,14 +13,33 @@ public class QbixAddress {
      * TYPE_OTHER - 3
      */
 
-    String formattedAddress;
-    int type;
-    String customType;
-    String street;
-    String pobox;   //Post Office Box number
-    String neiborhood;
-    String city;
-    String region;
-    String postcode;
-    String country;
+    public String formattedAddress;
+    public int type;
+    public String customType;
+    public String street;
+    public String pobox;   //Post Office Box number
+    public String neiborhood;
+    public String city;
+    public String region;
+    public String postcode;
+    public String country;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("formattedAddress", formattedAddress);
+            json.put("type", type);
+            json.put("customType", customType);
+            json.put("street", street);
+            json.put("pobox", pobox);
+            json.put("neiborhood", neiborhood);
+            json.put("city", city);
+            json.put("region", region);
+            json.put("postcode", postcode);
+            json.put("country", country);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -1,23 +1,26 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 import java.util.ArrayList;
 import java.util.List;
 
 public class QbixContact {
 
-
-    String displayName;
-    QbixName name;
-    List<QbixOrganization> organizations;
-    List<QbixAddress> addresses;
-    List<QbixPhone> phones;
-    List<QbixEmail> emails;
-    List<QbixIm> ims;
-    List<QbixWebsite> websites;
-    List<QbixPhoto> photos;
-    String note;
-    String nickname;
-    String birthday;
+    public int contactId;
+    public String displayName;
+    public QbixName name;
+    public List<QbixOrganization> organizations;
+    public List<QbixAddress> addresses;
+    public List<QbixPhone> phones;
+    public List<QbixEmail> emails;
+    public List<QbixIm> ims;
+    public List<QbixWebsite> websites;
+    public List<QbixPhoto> photos;
+    public String note;
+    public String nickname;
+    public String birthday;
 
     public QbixContact() {
         displayName = "";
@@ -33,4 +36,54 @@ public class QbixContact {
         nickname = "";
         birthday = "";
     }
+
+    public JSONObject toJson() {
+        try {
+            JSONObject jsonContact = new JSONObject();
+            jsonContact.put("contactId", contactId);
+            jsonContact.put("displayName", displayName);
+            jsonContact.put("name", name.toJson());
+            JSONArray jsonOrganizations = new JSONArray();
+            for (QbixOrganization organization : organizations) {
+                jsonOrganizations.put(organization.toJson());
+            }
+            jsonContact.put("organizations", jsonOrganizations);
+            JSONArray jsonAddresses = new JSONArray();
+            for (QbixAddress address : addresses) {
+                jsonAddresses.put(address.toJson());
+            }
+            jsonContact.put("addresses", jsonAddresses);
+            JSONArray jsonPhones = new JSONArray();
+            for (QbixPhone phone : phones) {
+                jsonPhones.put(phone.toJson());
+            }
+            jsonContact.put("phones", jsonPhones);
+            JSONArray jsonEmails = new JSONArray();
+            for (QbixEmail email : emails) {
+                jsonEmails.put(email.toJson());
+            }
+            jsonContact.put("emails", jsonEmails);
+            JSONArray jsonIms = new JSONArray();
+            for (QbixIm im : ims) {
+                jsonIms.put(im.toJson());
+            }
+            jsonContact.put("ims", jsonIms);
+            JSONArray jsonWebsites = new JSONArray();
+            for (QbixWebsite website : websites) {
+                jsonWebsites.put(website.toJson());
+            }
+            jsonContact.put("websites", jsonWebsites);
+            JSONArray jsonPhotos = new JSONArray();
+            for (QbixPhoto photo : photos) {
+                jsonPhotos.put(photo.toJson());
+            }
+            jsonContact.put("photos", jsonPhotos);
+            jsonContact.put("note", note);
+            jsonContact.put("nickname", nickname);
+            jsonContact.put("birthday", birthday);
+            return jsonContact;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
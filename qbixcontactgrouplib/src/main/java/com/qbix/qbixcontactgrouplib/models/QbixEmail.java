@@ -1,5 +1,7 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixEmail {
     /**
      * TYPES
@@ -10,7 +12,19 @@ public class QbixEmail {
      * TYPE_OTHER - 3
      */
 
-    String address;
-    int type;
-    String customType = null;
+    public String address;
+    public int type;
+    public String customType = null;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("address", address);
+            json.put("type", type);
+            json.put("customType", customType);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
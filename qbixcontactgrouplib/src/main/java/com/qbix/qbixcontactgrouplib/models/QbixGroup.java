@@ -1,10 +1,10 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.util.List;
-
 public class QbixGroup {
 
     public String sourceId;
@@ -15,18 +15,30 @@ public class QbixGroup {
     public boolean isDeleted;
     public boolean shouldSync;
     public boolean readOnly;
-    public List<Integer> contactIds;
+    public IntArrayList contactIds;
 
     public JSONObject toJson() {
+        return toJson(true);
+    }
+
+    /**
+     * @param withContactIds False if only label metadata is needed (contactIds are sent separately)
+     * @return label as JSONObject
+     */
+    public JSONObject toJson(boolean withContactIds) {
         try {
             JSONObject jsonGroup = new JSONObject();
             jsonGroup.put("sourceId", sourceId);
+            jsonGroup.put("title", title);
             jsonGroup.put("notes", notes);
             jsonGroup.put("summaryCount", summaryCount);
             jsonGroup.put("isVisible", isVisible);
             jsonGroup.put("isDeleted", isDeleted);
             jsonGroup.put("shouldSync", shouldSync);
             jsonGroup.put("readOnly", readOnly);
+            if (!withContactIds) {
+                return jsonGroup;
+            }
             JSONArray jsonContactIds = new JSONArray();
             for (int i = 0; i <contactIds.size(); i++) {
                 jsonContactIds.put(contactIds.get(i));
@@ -1,5 +1,7 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixIm {
     /**
      * TYPES
@@ -23,9 +25,23 @@ public class QbixIm {
      * PROTOCOL_NETMEETING - 8
      */
 
-    String data;
-    int type;
-    String customType = null;
-    String protocol;
-    String customProtocol = null;
+    public String data;
+    public int type;
+    public String customType = null;
+    public String protocol;
+    public String customProtocol = null;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("data", data);
+            json.put("type", type);
+            json.put("customType", customType);
+            json.put("protocol", protocol);
+            json.put("customProtocol", customProtocol);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
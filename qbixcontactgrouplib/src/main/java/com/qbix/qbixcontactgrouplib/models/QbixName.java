@@ -1,14 +1,34 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixName {
 
-    String displayName;
-    String givenName;
-    String familyName;
-    String prefix;  //Common prefixes in English names are "Mr", "Ms", "Dr" etc.
-    String middleName;
-    String suffix;  //Common suffixes in English names are "Sr", "Jr", "III" etc.
-    String phoneticGivenName;   //Used for phonetic spelling of the name, e.g. Pinyin, Katakana, Hiragana
-    String phoneticMiddleName;
-    String phoneticFamilyName;
+    public String displayName;
+    public String givenName;
+    public String familyName;
+    public String prefix;  //Common prefixes in English names are "Mr", "Ms", "Dr" etc.
+    public String middleName;
+    public String suffix;  //Common suffixes in English names are "Sr", "Jr", "III" etc.
+    public String phoneticGivenName;   //Used for phonetic spelling of the name, e.g. Pinyin, Katakana, Hiragana
+    public String phoneticMiddleName;
+    public String phoneticFamilyName;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("displayName", displayName);
+            json.put("givenName", givenName);
+            json.put("familyName", familyName);
+            json.put("prefix", prefix);
+            json.put("middleName", middleName);
+            json.put("suffix", suffix);
+            json.put("phoneticGivenName", phoneticGivenName);
+            json.put("phoneticMiddleName", phoneticMiddleName);
+            json.put("phoneticFamilyName", phoneticFamilyName);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
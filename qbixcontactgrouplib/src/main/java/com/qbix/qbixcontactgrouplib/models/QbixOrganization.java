@@ -1,5 +1,7 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixOrganization {
 
     /**
@@ -16,14 +18,33 @@ public class QbixOrganization {
      * UNDEFINED - 0
      */
 
-    String company;
-    int type;
-    String customType;
-    String title;
-    String department;
-    String jobDescription;
-    String symbol;
-    String phoneticName;
-    String officeLocation;
-    String phoneticNameStyle;
+    public String company;
+    public int type;
+    public String customType;
+    public String title;
+    public String department;
+    public String jobDescription;
+    public String symbol;
+    public String phoneticName;
+    public String officeLocation;
+    public String phoneticNameStyle;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("company", company);
+            json.put("type", type);
+            json.put("customType", customType);
+            json.put("title", title);
+            json.put("department", department);
+            json.put("jobDescription", jobDescription);
+            json.put("symbol", symbol);
+            json.put("phoneticName", phoneticName);
+            json.put("officeLocation", officeLocation);
+            json.put("phoneticNameStyle", phoneticNameStyle);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixPhone {
     /**
      * TYPES
@@ -27,7 +29,19 @@ public class QbixPhone {
      * TYPE_MMS - 20
      */
 
-    String number;
-    int type;
-    String customType;
+    public String number;
+    public int type;
+    public String customType;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("number", number);
+            json.put("type", type);
+            json.put("customType", customType);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -1,9 +1,20 @@
 package com.qbix.qbixcontactgrouplib.models;
 
-import java.sql.Blob;
+import org.json.JSONObject;
 
 public class QbixPhoto {
 
-    Number photoFileId;
-    Blob photo;
+    public Number photoFileId;
+    public String uri;  //Content uri of full size photo, its bytes are streamed only on demand
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("photoFileId", photoFileId);
+            json.put("uri", uri);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
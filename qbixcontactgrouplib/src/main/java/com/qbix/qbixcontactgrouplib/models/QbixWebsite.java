@@ -1,5 +1,7 @@
 package com.qbix.qbixcontactgrouplib.models;
 
+import org.json.JSONObject;
+
 public class QbixWebsite {
     /**
      * TYPES
@@ -14,7 +16,19 @@ public class QbixWebsite {
      * TYPE_OTHER - 7
      */
 
-    String url;
-    int type;
-    String customType;
+    public String url;
+    public int type;
+    public String customType;
+
+    public JSONObject toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            json.put("type", type);
+            json.put("customType", customType);
+            return json;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
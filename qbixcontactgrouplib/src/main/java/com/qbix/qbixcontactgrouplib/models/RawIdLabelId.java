@@ -1,11 +0,0 @@
-package com.qbix.qbixcontactgrouplib.models;
-
-public class RawIdLabelId {
-    public String rawId;
-    public String labelId;
-
-    public RawIdLabelId(String rawId, String labelId) {
-        this.rawId = rawId;
-        this.labelId = labelId;
-    }
-}
@@ -0,0 +1,249 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds;
+
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+import com.qbix.qbixcontactgroupcore.collections.IntIntHashMap;
+import com.qbix.qbixcontactgrouplib.models.QbixAddress;
+import com.qbix.qbixcontactgrouplib.models.QbixContact;
+import com.qbix.qbixcontactgrouplib.models.QbixEmail;
+import com.qbix.qbixcontactgrouplib.models.QbixIm;
+import com.qbix.qbixcontactgrouplib.models.QbixName;
+import com.qbix.qbixcontactgrouplib.models.QbixOrganization;
+import com.qbix.qbixcontactgrouplib.models.QbixPhone;
+import com.qbix.qbixcontactgrouplib.models.QbixPhoto;
+import com.qbix.qbixcontactgrouplib.models.QbixWebsite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ContactHelper {
+
+    /**
+     * Mimetypes which can be read into {@link QbixContact}
+     * (key - field of QbixContact, value - mimetype of its Data rows).
+     */
+    public static final Map<String, String> MIME_TYPES_BY_FIELD;
+
+    static {
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        map.put("name", CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE);
+        map.put("organizations", CommonDataKinds.Organization.CONTENT_ITEM_TYPE);
+        map.put("addresses", CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE);
+        map.put("phones", CommonDataKinds.Phone.CONTENT_ITEM_TYPE);
+        map.put("emails", CommonDataKinds.Email.CONTENT_ITEM_TYPE);
+        map.put("ims", CommonDataKinds.Im.CONTENT_ITEM_TYPE);
+        map.put("websites", CommonDataKinds.Website.CONTENT_ITEM_TYPE);
+        map.put("photos", CommonDataKinds.Photo.CONTENT_ITEM_TYPE);
+        map.put("note", CommonDataKinds.Note.CONTENT_ITEM_TYPE);
+        map.put("nickname", CommonDataKinds.Nickname.CONTENT_ITEM_TYPE);
+        map.put("birthday", CommonDataKinds.Event.CONTENT_ITEM_TYPE);
+        MIME_TYPES_BY_FIELD = Collections.unmodifiableMap(map);
+    }
+
+    //Columns 0-2 are contact id, mimetype and display name, DATA1-DATA10 are columns 3-12
+    private static final String[] DATA_PROJECTION = new String[]{
+            ContactsContract.Data.CONTACT_ID,
+            ContactsContract.Data.MIMETYPE,
+            ContactsContract.Data.DISPLAY_NAME,
+            ContactsContract.Data.DATA1,
+            ContactsContract.Data.DATA2,
+            ContactsContract.Data.DATA3,
+            ContactsContract.Data.DATA4,
+            ContactsContract.Data.DATA5,
+            ContactsContract.Data.DATA6,
+            ContactsContract.Data.DATA7,
+            ContactsContract.Data.DATA8,
+            ContactsContract.Data.DATA9,
+            ContactsContract.Data.DATA10,
+            ContactsContract.Data.DATA14
+    };
+    private static final int PHOTO_FILE_ID_COLUMN = 13;
+
+    /**
+     * Reads contacts with one pass over Data table (chunked by contact id). Rows are grouped by
+     * contact id and every row fills the part of {@link QbixContact} of its mimetype.
+     * Mimetypes only limit which fields are filled: every given contact is returned, fields without
+     * rows stay empty.
+     *
+     * @param context    Context instance for db interactions
+     * @param contactIds Ids of contacts that must be read
+     * @param mimeTypes  Mimetypes of rows that must be read (values of {@link #MIME_TYPES_BY_FIELD})
+     * @return contacts in order of given ids
+     */
+    public static List<QbixContact> getContacts(Context context, IntArrayList contactIds, Collection<String> mimeTypes) {
+        final List<QbixContact> contacts = new ArrayList<>(contactIds.size());
+        final IntIntHashMap indexByContactId = new IntIntHashMap(contactIds.size());
+        String[] ids = new String[contactIds.size()];
+        for (int i = 0; i < contactIds.size(); i++) {
+            QbixContact contact = new QbixContact();
+            contact.contactId = contactIds.get(i);
+            contacts.add(contact);
+            indexByContactId.put(contactIds.get(i), i);
+            ids[i] = String.valueOf(contactIds.get(i));
+        }
+        if (ids.length == 0 || mimeTypes.isEmpty()) {
+            return contacts;
+        }
+        QueryPlanner.query(context.getContentResolver(), ContactsContract.Data.CONTENT_URI,
+                DATA_PROJECTION,
+                ContactsContract.Data.MIMETYPE + QueryPlanner.getInSuffix(mimeTypes.size()),
+                mimeTypes.toArray(new String[mimeTypes.size()]),
+                ContactsContract.Data.CONTACT_ID, ids,
+                new QueryPlanner.RowHandler() {
+                    @Override
+                    public void onRow(Cursor cursor) {
+                        int index = indexByContactId.get(cursor.getInt(0), -1);
+                        if (index < 0) {
+                            return;
+                        }
+                        QbixContact contact = contacts.get(index);
+                        if (contact.displayName.isEmpty() && cursor.getString(2) != null) {
+                            contact.displayName = cursor.getString(2);
+                        }
+                        fillContact(contact, cursor);
+                    }
+                });
+        return contacts;
+    }
+
+    /**
+     * Fills part of contact from Data row of {@link #DATA_PROJECTION} depending on its mimetype.
+     *
+     * @param contact Contact which the row belongs to
+     * @param cursor  Cursor at the row
+     */
+    private static void fillContact(QbixContact contact, Cursor cursor) {
+        String mimeType = cursor.getString(1);
+        if (mimeType == null) {
+            return;
+        }
+        switch (mimeType) {
+            case CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE:
+                if (contact.name.displayName != null) {
+                    //Only name of the first raw contact is used
+                    return;
+                }
+                QbixName name = contact.name;
+                name.displayName = getData(cursor, 1);
+                name.givenName = getData(cursor, 2);
+                name.familyName = getData(cursor, 3);
+                name.prefix = getData(cursor, 4);
+                name.middleName = getData(cursor, 5);
+                name.suffix = getData(cursor, 6);
+                name.phoneticGivenName = getData(cursor, 7);
+                name.phoneticMiddleName = getData(cursor, 8);
+                name.phoneticFamilyName = getData(cursor, 9);
+                break;
+            case CommonDataKinds.Organization.CONTENT_ITEM_TYPE:
+                QbixOrganization organization = new QbixOrganization();
+                organization.company = getData(cursor, 1);
+                organization.type = getDataInt(cursor, 2);
+                organization.customType = getData(cursor, 3);
+                organization.title = getData(cursor, 4);
+                organization.department = getData(cursor, 5);
+                organization.jobDescription = getData(cursor, 6);
+                organization.symbol = getData(cursor, 7);
+                organization.phoneticName = getData(cursor, 8);
+                organization.officeLocation = getData(cursor, 9);
+                organization.phoneticNameStyle = getData(cursor, 10);
+                contact.organizations.add(organization);
+                break;
+            case CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE:
+                QbixAddress address = new QbixAddress();
+                address.formattedAddress = getData(cursor, 1);
+                address.type = getDataInt(cursor, 2);
+                address.customType = getData(cursor, 3);
+                address.street = getData(cursor, 4);
+                address.pobox = getData(cursor, 5);
+                address.neiborhood = getData(cursor, 6);
+                address.city = getData(cursor, 7);
+                address.region = getData(cursor, 8);
+                address.postcode = getData(cursor, 9);
+                address.country = getData(cursor, 10);
+                contact.addresses.add(address);
+                break;
+            case CommonDataKinds.Phone.CONTENT_ITEM_TYPE:
+                QbixPhone phone = new QbixPhone();
+                phone.number = getData(cursor, 1);
+                phone.type = getDataInt(cursor, 2);
+                phone.customType = getData(cursor, 3);
+                contact.phones.add(phone);
+                break;
+            case CommonDataKinds.Email.CONTENT_ITEM_TYPE:
+                QbixEmail email = new QbixEmail();
+                email.address = getData(cursor, 1);
+                email.type = getDataInt(cursor, 2);
+                email.customType = getData(cursor, 3);
+                contact.emails.add(email);
+                break;
+            case CommonDataKinds.Im.CONTENT_ITEM_TYPE:
+                QbixIm im = new QbixIm();
+                im.data = getData(cursor, 1);
+                im.type = getDataInt(cursor, 2);
+                im.customType = getData(cursor, 3);
+                im.protocol = getData(cursor, 5);
+                im.customProtocol = getData(cursor, 6);
+                contact.ims.add(im);
+                break;
+            case CommonDataKinds.Website.CONTENT_ITEM_TYPE:
+                QbixWebsite website = new QbixWebsite();
+                website.url = getData(cursor, 1);
+                website.type = getDataInt(cursor, 2);
+                website.customType = getData(cursor, 3);
+                contact.websites.add(website);
+                break;
+            case CommonDataKinds.Photo.CONTENT_ITEM_TYPE:
+                QbixPhoto photo = new QbixPhoto();
+                //Photo with thumbnail only has no full size file, its entry stays empty
+                if (!cursor.isNull(PHOTO_FILE_ID_COLUMN)) {
+                    photo.photoFileId = cursor.getLong(PHOTO_FILE_ID_COLUMN);
+                    photo.uri = ContentUris.withAppendedId(ContactsContract.DisplayPhoto.CONTENT_URI,
+                            cursor.getLong(PHOTO_FILE_ID_COLUMN)).toString();
+                }
+                contact.photos.add(photo);
+                break;
+            case CommonDataKinds.Note.CONTENT_ITEM_TYPE:
+                if (contact.note.isEmpty() && getData(cursor, 1) != null) {
+                    contact.note = getData(cursor, 1);
+                }
+                break;
+            case CommonDataKinds.Nickname.CONTENT_ITEM_TYPE:
+                if (contact.nickname.isEmpty() && getData(cursor, 1) != null) {
+                    contact.nickname = getData(cursor, 1);
+                }
+                break;
+            case CommonDataKinds.Event.CONTENT_ITEM_TYPE:
+                if (getDataInt(cursor, 2) == CommonDataKinds.Event.TYPE_BIRTHDAY && getData(cursor, 1) != null) {
+                    contact.birthday = getData(cursor, 1);
+                }
+                break;
+        }
+    }
+
+    /**
+     * @param cursor Cursor at row of {@link #DATA_PROJECTION}
+     * @param n      Number of DATA column (1-10)
+     * @return value of DATAn column
+     */
+    private static String getData(Cursor cursor, int n) {
+        return cursor.getString(n + 2);
+    }
+
+    /**
+     * @param cursor Cursor at row of {@link #DATA_PROJECTION}
+     * @param n      Number of DATA column (1-10)
+     * @return value of DATAn column as int (0 if it is null)
+     */
+    private static int getDataInt(Cursor cursor, int n) {
+        return cursor.getInt(n + 2);
+    }
+}
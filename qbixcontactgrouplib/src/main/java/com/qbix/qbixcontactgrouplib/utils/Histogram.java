@@ -0,0 +1,95 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets: bucket 0 counts value 0,
+ * bucket i counts values from 2^(i-1) to 2^i - 1. Percentiles are reported as upper bounds of
+ * their buckets, so they are at most twice the real value.
+ */
+public class Histogram {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value Value to add (negative values are counted as 0)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets summary of recorded values. Values recorded while summary is built may be partly
+     * included, this is fine for telemetry.
+     *
+     * @return JSONObject with "count", "sum", "max", "mean", "p50", "p90", "p99" and "buckets"
+     * (counts of buckets up to the last non-empty one)
+     */
+    public JSONObject toJson() throws JSONException {
+        long[] counts = new long[BUCKET_COUNT];
+        int lastBucket = -1;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            if (counts[i] > 0) {
+                lastBucket = i;
+            }
+        }
+        long total = count.get();
+        JSONObject json = new JSONObject();
+        json.put("count", total);
+        json.put("sum", sum.get());
+        json.put("max", max.get());
+        json.put("mean", total == 0 ? 0 : (double) sum.get() / total);
+        json.put("p50", getPercentile(counts, 0.5));
+        json.put("p90", getPercentile(counts, 0.9));
+        json.put("p99", getPercentile(counts, 0.99));
+        JSONArray jsonBuckets = new JSONArray();
+        for (int i = 0; i <= lastBucket; i++) {
+            jsonBuckets.put(counts[i]);
+        }
+        json.put("buckets", jsonBuckets);
+        return json;
+    }
+
+    /**
+     * @return upper bound of bucket which contains given percentile, 0 if there are no values
+     */
+    private static long getPercentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+}
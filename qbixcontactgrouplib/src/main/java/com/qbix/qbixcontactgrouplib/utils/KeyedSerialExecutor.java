@@ -0,0 +1,92 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on given executor so that tasks which share a key run one by one in submission
+ * order, while tasks with different keys run in parallel. A task can have several keys; it runs
+ * after all earlier tasks with any of its keys are done. Tasks without keys run immediately.
+ */
+public class KeyedSerialExecutor {
+
+    private final Executor executor;
+    //key - task key, value - submitted and not completed tasks with that key (head is running or ready)
+    private final HashMap<String, ArrayDeque<Task>> queues = new HashMap<>();
+
+    public KeyedSerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Submits task.
+     *
+     * @param keys     Keys of the task (e.g. label sourceIds it changes)
+     * @param runnable Task to run
+     */
+    public void execute(Collection<String> keys, Runnable runnable) {
+        Task task = new Task(new LinkedHashSet<>(keys), runnable);
+        synchronized (this) {
+            for (String key : task.keys) {
+                ArrayDeque<Task> queue = queues.get(key);
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    queues.put(key, queue);
+                }
+                if (!queue.isEmpty()) {
+                    task.blockers++;
+                }
+                queue.add(task);
+            }
+            if (task.blockers > 0) {
+                return;
+            }
+        }
+        executor.execute(task);
+    }
+
+    private void complete(Task task) {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            for (String key : task.keys) {
+                ArrayDeque<Task> queue = queues.get(key);
+                queue.poll();
+                Task next = queue.peek();
+                if (next == null) {
+                    queues.remove(key);
+                } else if (--next.blockers == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        for (Task next : ready) {
+            executor.execute(next);
+        }
+    }
+
+    private class Task implements Runnable {
+        final Collection<String> keys;
+        final Runnable runnable;
+        //Count of keys for which an earlier task is not completed yet
+        int blockers;
+
+        Task(Collection<String> keys, Runnable runnable) {
+            this.keys = keys;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                runnable.run();
+            } finally {
+                complete(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import android.accounts.Account;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+
+import com.qbix.qbixcontactgroupcore.ContactsDataSource;
+import com.qbix.qbixcontactgroupcore.LabelRow;
+import com.qbix.qbixcontactgroupcore.collections.IntHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide index of group rows: from sourceId to the group row of every account and from
+ * label id back to sourceId and account. Built with one Groups query on first use. Index is marked
+ * stale by own writes ({@link #invalidate()}) and by change notifications. Contacts Provider
+ * notifies {@link ContactsContract#AUTHORITY_URI} on every change, which reaches the observer of
+ * Groups too, so membership writes mark index stale as well. That is why next lookup reads only
+ * ids and versions of group rows, and reads full rows only for new and changed ones; deleted
+ * rows are dropped.
+ * <p>
+ * Indexed rows have no {@link LabelRow#summaryCount} (it changes without group version change)
+ * and no {@link LabelRow#contactIds}.
+ */
+public class LabelIndex {
+
+    private static final String[] VERSION_PROJECTION = new String[]{
+            ContactsContract.Groups._ID,
+            ContactsContract.Groups.VERSION
+    };
+
+    private static final String[] PROJECTION = new String[]{
+            ContactsContract.Groups._ID,
+            ContactsContract.Groups.VERSION,
+            ContactsContract.Groups.SOURCE_ID,
+            ContactsContract.Groups.TITLE,
+            ContactsContract.Groups.ACCOUNT_NAME,
+            ContactsContract.Groups.ACCOUNT_TYPE,
+            ContactsContract.Groups.NOTES,
+            ContactsContract.Groups.GROUP_VISIBLE,
+            ContactsContract.Groups.DELETED,
+            ContactsContract.Groups.SHOULD_SYNC,
+            ContactsContract.Groups.GROUP_IS_READ_ONLY
+    };
+
+    private static LabelIndex instance;
+
+    private final ContentResolver resolver;
+    //Incremented on every change notification, index is fresh while it equals indexedGeneration
+    private final AtomicInteger generation = new AtomicInteger();
+    private int indexedGeneration = -1;
+    //key - label id
+    private final HashMap<Integer, Entry> entriesByLabelId = new HashMap<>();
+    //key - sourceId, value - group rows of every account
+    private final HashMap<String, List<Entry>> entriesBySourceId = new HashMap<>();
+
+    /**
+     * Gets index of the process, creating it on first call.
+     *
+     * @param context Any context of the application
+     * @return label index
+     */
+    public static synchronized LabelIndex get(Context context) {
+        if (instance == null) {
+            instance = new LabelIndex(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    private LabelIndex(ContentResolver resolver) {
+        this.resolver = resolver;
+        resolver.registerContentObserver(ContactsContract.Groups.CONTENT_URI, true,
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Marks index stale. Must be called right after own writes, so next lookup sees them even if
+     * change notification has not reached main thread yet.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Passes copies of group rows with given sourceIds to visitor, in order of sourceIds.
+     *
+     * @param sourceIds Source ids which group rows are needed
+     * @param visitor   Visitor of rows
+     */
+    public void readGroups(String[] sourceIds, ContactsDataSource.GroupVisitor visitor) {
+        List<LabelRow> rows = new ArrayList<>();
+        synchronized (this) {
+            refresh();
+            for (String sourceId : sourceIds) {
+                List<Entry> entries = sourceId == null ? null : entriesBySourceId.get(sourceId);
+                for (int i = 0; entries != null && i < entries.size(); i++) {
+                    rows.add(entries.get(i).copyRow());
+                }
+            }
+        }
+        for (LabelRow row : rows) {
+            visitor.visit(row);
+        }
+    }
+
+    /**
+     * @param sourceId SourceId of the label
+     * @return label ids of the label's group in every account
+     */
+    public synchronized String[] getLabelIds(String sourceId) {
+        refresh();
+        List<Entry> entries = entriesBySourceId.get(sourceId);
+        String[] labelIds = new String[entries == null ? 0 : entries.size()];
+        for (int i = 0; i < labelIds.length; i++) {
+            labelIds[i] = String.valueOf(entries.get(i).row.labelId);
+        }
+        return labelIds;
+    }
+
+    /**
+     * @param sourceId SourceId of the label
+     * @return accounts which have a group of the label
+     */
+    public synchronized List<Account> getAccounts(String sourceId) {
+        refresh();
+        List<Account> accounts = new ArrayList<>();
+        List<Entry> entries = entriesBySourceId.get(sourceId);
+        for (int i = 0; entries != null && i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.row.accountName != null && entry.row.accountType != null) {
+                accounts.add(new Account(entry.row.accountName, entry.row.accountType));
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * @param labelId Id of group row
+     * @return sourceId of the group or null if there is no such group
+     */
+    public synchronized String getSourceId(int labelId) {
+        refresh();
+        Entry entry = entriesByLabelId.get(labelId);
+        return entry == null ? null : entry.row.sourceId;
+    }
+
+    /**
+     * @param labelId Id of group row
+     * @return account name of the group or null if there is no such group
+     */
+    public synchronized String getAccountName(int labelId) {
+        refresh();
+        Entry entry = entriesByLabelId.get(labelId);
+        return entry == null ? null : entry.row.accountName;
+    }
+
+    /**
+     * Brings index up to date if Groups changed since last refresh.
+     */
+    private void refresh() {
+        int currentGeneration = generation.get();
+        if (currentGeneration == indexedGeneration) {
+            return;
+        }
+        final IntHashSet seen = new IntHashSet(entriesByLabelId.size());
+        final List<String> changedIds = new ArrayList<>();
+        QueryPlanner.readAll(resolver.query(ContactsContract.Groups.CONTENT_URI, VERSION_PROJECTION, null, null, null),
+                new QueryPlanner.RowHandler() {
+                    @Override
+                    public void onRow(Cursor cursor) {
+                        int labelId = cursor.getInt(0);
+                        Entry entry = entriesByLabelId.get(labelId);
+                        if (entry == null || entry.version != cursor.getInt(1)) {
+                            changedIds.add(String.valueOf(labelId));
+                        }
+                        seen.add(labelId);
+                    }
+                });
+        Iterator<Map.Entry<Integer, Entry>> iterator = entriesByLabelId.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Entry> indexed = iterator.next();
+            if (!seen.contains(indexed.getKey())) {
+                removeFromSourceId(indexed.getValue());
+                iterator.remove();
+            }
+        }
+        //Changed rows are dropped first, so a row deleted after the versions were read does not stay
+        for (String changedId : changedIds) {
+            Entry previous = entriesByLabelId.remove(Integer.valueOf(changedId));
+            if (previous != null) {
+                removeFromSourceId(previous);
+            }
+        }
+        if (!changedIds.isEmpty()) {
+            QueryPlanner.query(resolver, ContactsContract.Groups.CONTENT_URI, PROJECTION, null, null,
+                    ContactsContract.Groups._ID, changedIds.toArray(new String[changedIds.size()]),
+                    new QueryPlanner.RowHandler() {
+                        @Override
+                        public void onRow(Cursor cursor) {
+                            Entry entry = new Entry(cursor);
+                            entriesByLabelId.put(entry.row.labelId, entry);
+                            addToSourceId(entry);
+                        }
+                    });
+        }
+        indexedGeneration = currentGeneration;
+    }
+
+    private void addToSourceId(Entry entry) {
+        if (entry.row.sourceId == null) {
+            return;
+        }
+        List<Entry> entries = entriesBySourceId.get(entry.row.sourceId);
+        if (entries == null) {
+            entries = new ArrayList<>(2);
+            entriesBySourceId.put(entry.row.sourceId, entries);
+        }
+        entries.add(entry);
+    }
+
+    private void removeFromSourceId(Entry entry) {
+        List<Entry> entries = entry.row.sourceId == null ? null : entriesBySourceId.get(entry.row.sourceId);
+        if (entries == null) {
+            return;
+        }
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            entriesBySourceId.remove(entry.row.sourceId);
+        }
+    }
+
+    /**
+     * Indexed group row with the version it was read at.
+     */
+    private static class Entry {
+        final LabelRow row = new LabelRow();
+        final int version;
+
+        Entry(Cursor cursor) {
+            row.labelId = cursor.getInt(0);
+            version = cursor.getInt(1);
+            row.sourceId = cursor.getString(2);
+            row.title = cursor.getString(3);
+            row.accountName = cursor.getString(4);
+            row.accountType = cursor.getString(5);
+            row.notes = cursor.getString(6);
+            row.isVisible = cursor.getInt(7) == 0;
+            row.isDeleted = cursor.getInt(8) == 1;
+            row.shouldSync = cursor.getInt(9) == 1;
+            row.readOnly = cursor.getInt(10) == 1;
+        }
+
+        LabelRow copyRow() {
+            LabelRow copy = new LabelRow();
+            copy.labelId = row.labelId;
+            copy.sourceId = row.sourceId;
+            copy.title = row.title;
+            copy.accountName = row.accountName;
+            copy.accountType = row.accountType;
+            copy.notes = row.notes;
+            copy.isVisible = row.isVisible;
+            copy.isDeleted = row.isDeleted;
+            copy.shouldSync = row.shouldSync;
+            copy.readOnly = row.readOnly;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide performance counters of the plugin: latency of every action, Contacts Provider
+ * queries and rows they returned, applyBatch calls with their durations and sizes.
+ * All methods are thread-safe and cheap enough to be called on every query.
+ */
+public class Metrics {
+
+    private static volatile Counters counters = new Counters();
+
+    /**
+     * Records time of one plugin action, from the moment it was dispatched till its result.
+     *
+     * @param action     Name of the action
+     * @param startNanos {@link System#nanoTime()} when action was dispatched
+     */
+    public static void recordAction(String action, long startNanos) {
+        Counters current = counters;
+        Histogram histogram = current.actionLatencies.get(action);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = current.actionLatencies.putIfAbsent(action, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Records one Contacts Provider query.
+     *
+     * @param rows Count of rows read from its cursor
+     */
+    public static void recordQuery(int rows) {
+        Counters current = counters;
+        current.queries.incrementAndGet();
+        current.rowsScanned.addAndGet(rows);
+    }
+
+    /**
+     * Records one applyBatch call.
+     *
+     * @param operations Count of operations in the batch
+     * @param startNanos {@link System#nanoTime()} before the call
+     */
+    public static void recordApplyBatch(int operations, long startNanos) {
+        Counters current = counters;
+        current.batchSizes.record(operations);
+        current.applyBatchLatencies.record(toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Gets all metrics recorded since start or last reset.
+     * Latencies are in milliseconds (see {@link Histogram#toJson()} for histogram fields).
+     *
+     * @param reset True if metrics must be cleared after they are read
+     * @return JSONObject with "actions" (histogram for every action name), "queries", "rowsScanned",
+     * "applyBatch" (latency histogram), "batchSizes" (histogram of operation counts) and "sinceMillis"
+     * (wall time when recording started)
+     */
+    public static JSONObject getMetrics(boolean reset) throws JSONException {
+        Counters current = counters;
+        if (reset) {
+            counters = new Counters();
+        }
+        JSONObject actions = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : current.actionLatencies.entrySet()) {
+            actions.put(entry.getKey(), entry.getValue().toJson());
+        }
+        JSONObject json = new JSONObject();
+        json.put("actions", actions);
+        json.put("queries", current.queries.get());
+        json.put("rowsScanned", current.rowsScanned.get());
+        json.put("applyBatch", current.applyBatchLatencies.toJson());
+        json.put("batchSizes", current.batchSizes.toJson());
+        json.put("sinceMillis", current.sinceMillis);
+        return json;
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000L;
+    }
+
+    /**
+     * Metrics of one recording period, replaced as a whole on reset.
+     */
+    private static class Counters {
+        final long sinceMillis = System.currentTimeMillis();
+        final ConcurrentHashMap<String, Histogram> actionLatencies = new ConcurrentHashMap<>();
+        final AtomicLong queries = new AtomicLong();
+        final AtomicLong rowsScanned = new AtomicLong();
+        final Histogram applyBatchLatencies = new Histogram();
+        final Histogram batchSizes = new Histogram();
+    }
+}
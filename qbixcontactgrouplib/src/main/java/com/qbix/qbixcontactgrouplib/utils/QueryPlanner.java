@@ -0,0 +1,121 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Runs "column IN(...)" queries for id sets of any size. Ids are split into chunks that fit
+ * SQLite bound-variable limit (999 by default), placeholder templates are cached per chunk size
+ * and rows of all chunks are passed to one {@link RowHandler}.
+ */
+public class QueryPlanner {
+
+    /**
+     * Max count of ids bound in one query. Leaves room for other selection arguments.
+     */
+    public static final int MAX_CHUNK_SIZE = 500;
+
+    private static final String[] SUFFIX_CACHE = new String[MAX_CHUNK_SIZE + 1];
+
+    /**
+     * Callback for every row returned by chunked query.
+     * Columns of cursor are in the same order as in given projection.
+     */
+    public interface RowHandler {
+        void onRow(Cursor cursor);
+    }
+
+    /**
+     * Queries rows which inColumn value is one of given ids, chunk by chunk.
+     *
+     * @param resolver      ContentResolver instance for db interactions
+     * @param uri           Uri that must be queried
+     * @param projection    Columns that must be returned
+     * @param selection     Additional selection (can be null), joined with IN clause by AND
+     * @param selectionArgs Arguments of additional selection (can be null)
+     * @param inColumn      Column which value must be in ids
+     * @param ids           Ids which rows are needed
+     * @param handler       Handler which gets every row of every chunk
+     */
+    public static void query(ContentResolver resolver, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs,
+                             String inColumn, String[] ids, RowHandler handler) {
+        Trace.Span span = Trace.begin("query");
+        Trace.attr(span, "uri", uri);
+        Trace.attr(span, "ids", ids.length);
+        try {
+            int fixedArgCount = selectionArgs == null ? 0 : selectionArgs.length;
+            String prefix = selection == null ? inColumn : "(" + selection + ") AND " + inColumn;
+            for (int start = 0; start < ids.length; start += MAX_CHUNK_SIZE) {
+                int chunkSize = Math.min(MAX_CHUNK_SIZE, ids.length - start);
+                String[] args = new String[fixedArgCount + chunkSize];
+                if (fixedArgCount > 0) {
+                    System.arraycopy(selectionArgs, 0, args, 0, fixedArgCount);
+                }
+                System.arraycopy(ids, start, args, fixedArgCount, chunkSize);
+                readAll(resolver.query(uri, projection, prefix + getInSuffix(chunkSize), args, null), handler);
+            }
+        } finally {
+            //Span is closed even if a query fails, so spans opened after it are not nested into it
+            Trace.end(span);
+        }
+    }
+
+    /**
+     * Passes every row of cursor to handler, closes cursor and records the query in {@link Metrics}
+     * and {@link Trace}.
+     *
+     * @param cursor  Cursor of query (can be null)
+     * @param handler Handler which gets every row
+     */
+    public static void readAll(Cursor cursor, RowHandler handler) {
+        if (cursor == null) {
+            return;
+        }
+        Trace.Span span = Trace.begin("readAll");
+        int rows = 0;
+        try {
+            while (cursor.moveToNext()) {
+                handler.onRow(cursor);
+                rows++;
+            }
+        } finally {
+            cursor.close();
+            Metrics.recordQuery(rows);
+            Trace.attr(span, "rows", rows);
+            Trace.end(span);
+        }
+    }
+
+    /**
+     * Gets selection suffix for given count of arguments. Suffixes up to {@link #MAX_CHUNK_SIZE}
+     * arguments are built once and reused.
+     *
+     * @param count Size of selectionArgs
+     * @return string for query selection (example: " IN(?,?...,?)")
+     */
+    public static String getInSuffix(int count) {
+        if (count > MAX_CHUNK_SIZE) {
+            return buildInSuffix(count);
+        }
+        String suffix = SUFFIX_CACHE[count];
+        if (suffix == null) {
+            suffix = buildInSuffix(count);
+            SUFFIX_CACHE[count] = suffix;
+        }
+        return suffix;
+    }
+
+    private static String buildInSuffix(int count) {
+        StringBuilder builder = new StringBuilder(5 + count * 2);
+        builder.append(" IN(");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('?');
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,249 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+
+import com.qbix.qbixcontactgroupcore.ContactsDataSource;
+import com.qbix.qbixcontactgroupcore.collections.IntArrayList;
+import com.qbix.qbixcontactgroupcore.collections.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide map of rawContacts: rawContactId to contactId, version and account, and contactId
+ * to its rawContactIds. RawContacts table is scanned once, on first use. After Contacts Provider
+ * reports a change, next lookup reads only contacts updated or deleted since previous refresh
+ * ({@link ContactsContract.Contacts#CONTACT_LAST_UPDATED_TIMESTAMP},
+ * {@link ContactsContract.DeletedContacts}) and re-reads rawContacts of those contacts. Editing or
+ * re-aggregating a rawContact updates every contact it belonged to, so the map stays exact.
+ */
+public class RawContactIndex {
+
+    /**
+     * Watermark is moved back by this margin, so rows updated while refresh runs are read again.
+     */
+    private static final long CLOCK_MARGIN_MS = 1000;
+
+    private static final String[] PROJECTION = new String[]{
+            ContactsContract.RawContacts._ID,
+            ContactsContract.RawContacts.CONTACT_ID,
+            ContactsContract.RawContacts.VERSION,
+            ContactsContract.RawContacts.ACCOUNT_NAME,
+            ContactsContract.RawContacts.ACCOUNT_TYPE
+    };
+
+    private static RawContactIndex instance;
+
+    private final ContentResolver resolver;
+    //Incremented on every change notification, map is fresh while it equals indexedGeneration
+    private final AtomicInteger generation = new AtomicInteger();
+    private int indexedGeneration = -1;
+    //Provider time of the last refresh, 0 if map was never built
+    private long watermark;
+
+    private final IntIntHashMap contactIdByRaw = new IntIntHashMap();
+    private final IntIntHashMap versionByRaw = new IntIntHashMap();
+    //value - index of account in accountNames and accountTypes
+    private final IntIntHashMap accountByRaw = new IntIntHashMap();
+    private final List<String> accountNames = new ArrayList<>();
+    private final List<String> accountTypes = new ArrayList<>();
+    //key - account name and type joined with a line break
+    private final HashMap<String, Integer> accountIndexByKey = new HashMap<>();
+    //key - contactId, value - its rawContactIds
+    private final HashMap<Integer, IntArrayList> rawIdsByContact = new HashMap<>();
+
+    /**
+     * Callback for every rawContact of {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        void visit(int rawContactId, int contactId, int version);
+    }
+
+    /**
+     * Gets map of the process, creating it on first call.
+     *
+     * @param context Any context of the application
+     * @return rawContact map
+     */
+    public static synchronized RawContactIndex get(Context context) {
+        if (instance == null) {
+            instance = new RawContactIndex(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    private RawContactIndex(ContentResolver resolver) {
+        this.resolver = resolver;
+        resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true,
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Marks map stale. Must be called right after own writes, so next lookup sees them even if
+     * change notification has not reached main thread yet.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @param rawContactId Id of rawContact
+     * @return id of its contact or -1 if there is no such rawContact
+     */
+    public synchronized int getContactId(int rawContactId) {
+        refresh();
+        return contactIdByRaw.get(rawContactId, -1);
+    }
+
+    /**
+     * Passes rawContacts of given contacts to visitor.
+     *
+     * @param contactIds Ids of contacts
+     * @param visitor    Visitor of rawContacts
+     */
+    public void readRawContacts(int[] contactIds, ContactsDataSource.RawContactVisitor visitor) {
+        IntArrayList rawIds = new IntArrayList();
+        IntArrayList rawContactIds = new IntArrayList();
+        List<String> rawAccountNames = new ArrayList<>();
+        List<String> rawAccountTypes = new ArrayList<>();
+        synchronized (this) {
+            refresh();
+            for (int contactId : contactIds) {
+                IntArrayList contactRawIds = rawIdsByContact.get(contactId);
+                for (int i = 0; contactRawIds != null && i < contactRawIds.size(); i++) {
+                    int rawId = contactRawIds.get(i);
+                    rawIds.add(rawId);
+                    rawContactIds.add(contactId);
+                    int account = accountByRaw.get(rawId, -1);
+                    rawAccountNames.add(account < 0 ? null : accountNames.get(account));
+                    rawAccountTypes.add(account < 0 ? null : accountTypes.get(account));
+                }
+            }
+        }
+        for (int i = 0; i < rawIds.size(); i++) {
+            visitor.visit(rawIds.get(i), rawContactIds.get(i), rawAccountNames.get(i), rawAccountTypes.get(i));
+        }
+    }
+
+    /**
+     * Passes every rawContact to visitor. Map is locked while visitor runs.
+     *
+     * @param visitor Visitor of rawContacts
+     */
+    public synchronized void forEach(final Visitor visitor) {
+        refresh();
+        contactIdByRaw.forEach(new IntIntHashMap.Visitor() {
+            @Override
+            public void visit(int rawId, int contactId) {
+                visitor.visit(rawId, contactId, versionByRaw.get(rawId, -1));
+            }
+        });
+    }
+
+    /**
+     * Brings map up to date if Contacts Provider changed since last refresh.
+     */
+    private void refresh() {
+        int currentGeneration = generation.get();
+        if (currentGeneration == indexedGeneration) {
+            return;
+        }
+        long refreshTime = System.currentTimeMillis() - CLOCK_MARGIN_MS;
+        QueryPlanner.RowHandler handler = new QueryPlanner.RowHandler() {
+            @Override
+            public void onRow(Cursor cursor) {
+                if (!cursor.isNull(1)) {
+                    put(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2), cursor.getString(3), cursor.getString(4));
+                }
+            }
+        };
+        if (watermark == 0) {
+            QueryPlanner.readAll(resolver.query(ContactsContract.RawContacts.CONTENT_URI, PROJECTION,
+                    null, null, null), handler);
+        } else {
+            IntArrayList changedContactIds = readContactIds(ContactsContract.Contacts.CONTENT_URI,
+                    ContactsContract.Contacts._ID, ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP);
+            IntArrayList deletedContactIds = readContactIds(ContactsContract.DeletedContacts.CONTENT_URI,
+                    ContactsContract.DeletedContacts.CONTACT_ID, ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP);
+            //All old rawContacts are dropped before new ones are added, so moved rawContacts stay
+            removeContacts(deletedContactIds);
+            removeContacts(changedContactIds);
+            if (!changedContactIds.isEmpty()) {
+                String[] ids = new String[changedContactIds.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = String.valueOf(changedContactIds.get(i));
+                }
+                QueryPlanner.query(resolver, ContactsContract.RawContacts.CONTENT_URI, PROJECTION, null, null,
+                        ContactsContract.RawContacts.CONTACT_ID, ids, handler);
+            }
+        }
+        watermark = refreshTime;
+        indexedGeneration = currentGeneration;
+    }
+
+    /**
+     * @return ids of contacts which timestampColumn is after watermark
+     */
+    private IntArrayList readContactIds(Uri uri, String idColumn, String timestampColumn) {
+        final IntArrayList contactIds = new IntArrayList();
+        QueryPlanner.readAll(resolver.query(uri, new String[]{idColumn}, timestampColumn + ">?",
+                new String[]{String.valueOf(watermark)}, null), new QueryPlanner.RowHandler() {
+            @Override
+            public void onRow(Cursor cursor) {
+                contactIds.add(cursor.getInt(0));
+            }
+        });
+        return contactIds;
+    }
+
+    private void removeContacts(IntArrayList contactIds) {
+        for (int i = 0; i < contactIds.size(); i++) {
+            int contactId = contactIds.get(i);
+            IntArrayList rawIds = rawIdsByContact.remove(contactId);
+            for (int j = 0; rawIds != null && j < rawIds.size(); j++) {
+                int rawId = rawIds.get(j);
+                if (contactIdByRaw.get(rawId, -1) == contactId) {
+                    contactIdByRaw.remove(rawId);
+                    versionByRaw.remove(rawId);
+                    accountByRaw.remove(rawId);
+                }
+            }
+        }
+    }
+
+    private void put(int rawId, int contactId, int version, String accountName, String accountType) {
+        contactIdByRaw.put(rawId, contactId);
+        versionByRaw.put(rawId, version);
+        if (accountName != null) {
+            String key = accountName + "\n" + accountType;
+            Integer account = accountIndexByKey.get(key);
+            if (account == null) {
+                account = accountNames.size();
+                accountNames.add(accountName);
+                accountTypes.add(accountType);
+                accountIndexByKey.put(key, account);
+            }
+            accountByRaw.put(rawId, account);
+        }
+        IntArrayList rawIds = rawIdsByContact.get(contactId);
+        if (rawIds == null) {
+            rawIds = new IntArrayList(1);
+            rawIdsByContact.put(contactId, rawIds);
+        }
+        rawIds.add(rawId);
+    }
+}
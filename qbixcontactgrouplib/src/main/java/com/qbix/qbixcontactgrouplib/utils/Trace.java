@@ -0,0 +1,225 @@
+package com.qbix.qbixcontactgrouplib.utils;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gated tracing of plugin work as structured spans. Disabled by default: then
+ * {@link #beginRoot(String)} and {@link #begin(String)} return null after one volatile read and
+ * {@link #attr}/{@link #end} do nothing, so no strings or objects are built. Use constant span and
+ * attribute names and primitive values, so disabled call sites stay free.
+ * <p>
+ * When enabled, every root span (one plugin action) is sampled with given rate. Spans begun on the
+ * same thread inside a sampled root become its children, {@link #begin(String)} spans outside of
+ * a sampled root are skipped. Every finished span is passed to the {@link Sink}.
+ * <pre>
+ * Trace.Span span = Trace.begin("query");
+ * try {
+ *     ...
+ *     Trace.attr(span, "rows", rows);
+ * } finally {
+ *     Trace.end(span);
+ * }
+ * </pre>
+ */
+public class Trace {
+
+    private static final String TAG = "QbixTrace";
+
+    /**
+     * Receiver of finished spans. Called on the thread which ended the span.
+     */
+    public interface Sink {
+        void onSpan(Span span);
+    }
+
+    /**
+     * Writes every span to logcat as one JSON line.
+     */
+    public static final Sink LOGCAT_SINK = new Sink() {
+        @Override
+        public void onSpan(Span span) {
+            Log.d(TAG, span.toJson().toString());
+        }
+    };
+
+    private static volatile Config config;
+    private static final AtomicLong nextSpanId = new AtomicLong(1);
+    private static final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+    private static final Random random = new Random();
+
+    /**
+     * Switches tracing on.
+     *
+     * @param sampleRate Share of root spans to trace, from 0 to 1
+     * @param sink       Receiver of finished spans
+     */
+    public static void enable(double sampleRate, Sink sink) {
+        config = new Config(Math.max(0, Math.min(1, sampleRate)), sink);
+    }
+
+    /**
+     * Switches tracing off. Spans already begun are still passed to their sink when they end.
+     */
+    public static void disable() {
+        config = null;
+    }
+
+    public static boolean isEnabled() {
+        return config != null;
+    }
+
+    /**
+     * Begins span of one unit of work (plugin action, background load). If a traced span is
+     * running on current thread, the new span becomes its child, otherwise it starts a new trace
+     * which is sampled.
+     *
+     * @param name Name of the span
+     * @return begun span or null if it is not traced
+     */
+    public static Span beginRoot(String name) {
+        Config current = config;
+        if (current == null) {
+            return null;
+        }
+        Span parent = currentSpan.get();
+        if (parent != null) {
+            return start(name, parent, parent.sink);
+        }
+        if (current.sampleRate < 1 && random.nextDouble() >= current.sampleRate) {
+            return null;
+        }
+        return start(name, null, current.sink);
+    }
+
+    /**
+     * Begins child span of the span running on current thread.
+     *
+     * @param name Name of the span
+     * @return begun span or null if there is no traced span on current thread
+     */
+    public static Span begin(String name) {
+        if (config == null) {
+            return null;
+        }
+        Span parent = currentSpan.get();
+        return parent == null ? null : start(name, parent, parent.sink);
+    }
+
+    /**
+     * Adds attribute to span.
+     *
+     * @param span  Span (can be null)
+     * @param key   Name of the attribute
+     * @param value Value of the attribute
+     */
+    public static void attr(Span span, String key, long value) {
+        if (span != null) {
+            span.put(key, value);
+        }
+    }
+
+    /**
+     * Adds attribute to span.
+     *
+     * @param span  Span (can be null)
+     * @param key   Name of the attribute
+     * @param value Value of the attribute (converted to string only if span is written)
+     */
+    public static void attr(Span span, String key, Object value) {
+        if (span != null) {
+            span.put(key, value);
+        }
+    }
+
+    /**
+     * Ends span and passes it to its sink.
+     *
+     * @param span Span (can be null)
+     */
+    public static void end(Span span) {
+        if (span == null) {
+            return;
+        }
+        span.durationNanos = System.nanoTime() - span.startNanos;
+        currentSpan.set(span.parent);
+        span.sink.onSpan(span);
+    }
+
+    private static Span start(String name, Span parent, Sink sink) {
+        Span span = new Span(nextSpanId.getAndIncrement(), name, parent, sink);
+        currentSpan.set(span);
+        return span;
+    }
+
+    private static class Config {
+        final double sampleRate;
+        final Sink sink;
+
+        Config(double sampleRate, Sink sink) {
+            this.sampleRate = sampleRate;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * One timed piece of work with its attributes.
+     */
+    public static class Span {
+        public final long id;
+        public final String name;
+        public final String thread;
+        public final long startMillis;
+        public long durationNanos;
+        final Span parent;
+        final Sink sink;
+        final long startNanos;
+        private final JSONObject attributes = new JSONObject();
+
+        Span(long id, String name, Span parent, Sink sink) {
+            this.id = id;
+            this.name = name;
+            this.parent = parent;
+            this.sink = sink;
+            this.thread = Thread.currentThread().getName();
+            this.startMillis = System.currentTimeMillis();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * @return id of parent span or 0 for root span
+         */
+        public long getParentId() {
+            return parent == null ? 0 : parent.id;
+        }
+
+        void put(String key, Object value) {
+            try {
+                attributes.put(key, value);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        public JSONObject toJson() {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("id", id);
+                json.put("parentId", getParentId());
+                json.put("name", name);
+                json.put("thread", thread);
+                json.put("start", startMillis);
+                json.put("durationMicros", durationNanos / 1000);
+                json.put("attributes", attributes);
+                return json;
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+    }
+}
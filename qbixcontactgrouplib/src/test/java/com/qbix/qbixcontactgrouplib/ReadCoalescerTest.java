@@ -0,0 +1,94 @@
+package com.qbix.qbixcontactgrouplib;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ReadCoalescerTest {
+
+    private static final String KEY = "get[[\"friends\"]]";
+
+    //Runs tasks only when test asks, so computations stay in flight
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final ReadCoalescer coalescer = new ReadCoalescer(new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+    });
+
+    @Test
+    public void identicalReadsShareComputation() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        PluginResult result = new PluginResult(PluginResult.Status.OK, "labels");
+
+        coalescer.execute(KEY, 0, first, computation(result));
+        coalescer.execute(KEY, 0, second, computation(new PluginResult(PluginResult.Status.OK, "other")));
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        assertSame(result, first.result);
+        assertSame(result, second.result);
+    }
+
+    @Test
+    public void readAfterWriteDoesNotJoinEarlierComputation() {
+        RecordingCallback beforeWrite = new RecordingCallback();
+        RecordingCallback afterWrite = new RecordingCallback();
+        PluginResult oldLabels = new PluginResult(PluginResult.Status.OK, "old labels");
+        PluginResult newLabels = new PluginResult(PluginResult.Status.OK, "new labels");
+
+        //Read, then write (generation changes) while the read is in flight, then identical read
+        coalescer.execute(KEY, 0, beforeWrite, computation(oldLabels));
+        coalescer.execute(KEY, 1, afterWrite, computation(newLabels));
+        assertEquals(2, tasks.size());
+        tasks.get(0).run();
+        tasks.get(1).run();
+
+        assertSame(oldLabels, beforeWrite.result);
+        assertSame(newLabels, afterWrite.result);
+    }
+
+    @Test
+    public void readAfterResultIsSentComputesAgain() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        PluginResult result = new PluginResult(PluginResult.Status.OK, "labels");
+
+        coalescer.execute(KEY, 0, first, computation(result));
+        tasks.get(0).run();
+        coalescer.execute(KEY, 0, second, computation(result));
+
+        assertEquals(2, tasks.size());
+    }
+
+    private static ReadCoalescer.Computation computation(final PluginResult result) {
+        return new ReadCoalescer.Computation() {
+            @Override
+            public PluginResult compute() {
+                return result;
+            }
+        };
+    }
+
+    private static class RecordingCallback extends CallbackContext {
+        private PluginResult result;
+
+        RecordingCallback() {
+            super("callback", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            result = pluginResult;
+        }
+    }
+}